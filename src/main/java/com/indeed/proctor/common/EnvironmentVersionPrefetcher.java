@@ -0,0 +1,116 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.util.varexport.Export;
+import org.apache.log4j.Logger;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warms the EnvironmentVersion cache in the background, on a single low priority thread and at a limited
+ * rate so that prefetching never competes with the lookups of actual requests.
+ *
+ * Tests already cached or already queued are skipped; tests that do not fit in the queue are dropped.
+ */
+class EnvironmentVersionPrefetcher {
+    private static final Logger LOGGER = Logger.getLogger(EnvironmentVersionPrefetcher.class);
+
+    private final LoadingCache<String, EnvironmentVersion> cache;
+    private final RateLimiter rateLimiter;
+    private final BlockingQueue<String> queue;
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    // runs at most one drain, with at most one more waiting to start
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(1),
+            new ThreadFactoryBuilder()
+                    .setNameFormat("ProctorPromoter-prefetch-Thread-%d")
+                    .setDaemon(true)
+                    .setPriority(Thread.MIN_PRIORITY)
+                    .build(),
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    private final AtomicLong prefetched = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    EnvironmentVersionPrefetcher(final LoadingCache<String, EnvironmentVersion> cache,
+                                 final double permitsPerSecond,
+                                 final int queueCapacity) {
+        Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond > 0");
+        Preconditions.checkArgument(queueCapacity > 0, "queueCapacity > 0");
+        this.cache = cache;
+        this.rateLimiter = RateLimiter.create(permitsPerSecond);
+        this.queue = new ArrayBlockingQueue<String>(queueCapacity);
+    }
+
+    void prefetch(final Iterable<String> testNames) {
+        boolean added = false;
+        for (final String testName : testNames) {
+            if (cache.getIfPresent(testName) != null || !queued.add(testName)) {
+                continue;
+            }
+            if (queue.offer(testName)) {
+                added = true;
+            } else {
+                queued.remove(testName);
+                dropped.incrementAndGet();
+            }
+        }
+        if (added) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        String testName;
+        while ((testName = queue.poll()) != null) {
+            queued.remove(testName);
+            if (cache.getIfPresent(testName) != null) {
+                continue;
+            }
+            rateLimiter.acquire();
+            try {
+                cache.get(testName);
+                prefetched.incrementAndGet();
+            } catch (final ExecutionException e) {
+                // logged by the loader, e.g. the lookup executors are full: leave it to the next request
+                LOGGER.debug("Unable to prefetch EnvironmentVersion of " + testName);
+            } catch (final RuntimeException e) {
+                LOGGER.warn("Unable to prefetch EnvironmentVersion of " + testName, e);
+            }
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Export(name = "prefetched", doc = "Number of EnvironmentVersion entries loaded ahead of a request")
+    public long getPrefetched() {
+        return prefetched.get();
+    }
+
+    @Export(name = "dropped", doc = "Number of tests not prefetched because the prefetch queue was full")
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Export(name = "queued", doc = "Number of tests waiting to be prefetched")
+    public int getQueued() {
+        return queue.size();
+    }
+}
@@ -2,30 +2,49 @@ package com.indeed.proctor.common;
 
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Strings;
-import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.indeed.proctor.common.model.TestDefinition;
 import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
 import com.indeed.proctor.store.GitProctorUtils;
 import com.indeed.proctor.store.Revision;
 import com.indeed.proctor.store.StoreException;
+import com.indeed.proctor.webapp.CurrentMatrixCache;
 import com.indeed.proctor.webapp.db.Environment;
 import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.webapp.model.WebappConfiguration;
 import com.indeed.proctor.webapp.util.ThreadPoolExecutorVarExports;
+import com.indeed.proctor.webapp.util.threads.InstrumentedExecutor;
+import com.indeed.util.varexport.Export;
 import com.indeed.util.varexport.VarExporter;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author parker
@@ -39,27 +58,301 @@ public class ProctorPromoter {
     final ProctorStore production;
     private ExecutorService executor;
 
-    private final Cache<String, EnvironmentVersion> environmentVersions = CacheBuilder.newBuilder()
-        .maximumSize(2048)
-        .expireAfterWrite(30, TimeUnit.SECONDS)
-        .softValues()
-        .build();
+    // Reloads of hot entries run here, not on the executor the loads themselves submit their store queries to
+    private final ExecutorService refreshExecutor = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+        .setNameFormat("ProctorPromoter-refresh-Thread-%d")
+        .setDaemon(true)
+        .build());
+    private final AtomicLong loads = new AtomicLong(0);
+
+    // @Nullable - shares the current matrices with the controllers when set
+    private CurrentMatrixCache matrixCache = null;
+
+    // Per store executors of the history lookups of getEnvironmentVersion misses, see setLookupConfiguration
+    private Map<Environment, InstrumentedExecutor> lookupExecutors = null;
+    private long lookupTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+    // Background loads of the EnvironmentVersion of tests about to be viewed, see prefetchEnvironmentVersions
+    private EnvironmentVersionPrefetcher prefetcher = null;
+    private double prefetchRate = 2;
+    private final AtomicLong refreshes = new AtomicLong(0);
+
+    // Concurrent misses for the same test share one load; entries read after their ttl are reloaded
+    // in the background while the previous value is still served
+    private final LoadingCache<String, EnvironmentVersion> environmentVersions;
+    private final CacheLoader<String, EnvironmentVersion> environmentVersionLoader = new CacheLoader<String, EnvironmentVersion>() {
+            @Override
+            public EnvironmentVersion load(final String testName) throws EnvironmentVersionUnavailableException {
+                loads.incrementAndGet();
+                return loadEnvironmentVersion(testName);
+            }
+
+            @Override
+            public ListenableFuture<EnvironmentVersion> reload(final String testName, final EnvironmentVersion oldValue) {
+                refreshes.incrementAndGet();
+                final ListenableFutureTask<EnvironmentVersion> task = ListenableFutureTask.create(new Callable<EnvironmentVersion>() {
+                    @Override
+                    public EnvironmentVersion call() throws EnvironmentVersionUnavailableException {
+                        return loadEnvironmentVersion(testName);
+                    }
+                });
+                refreshExecutor.execute(task);
+                return task;
+            }
+        };
+
+    // Bulk table of the EnvironmentVersion of every test, see refreshEnvironmentVersions
+    private volatile Map<String, EnvironmentVersion> environmentVersionTable = null;
+    // latest versions of trunk, qa and production the table was built from
+    private volatile List<String> environmentVersionTableHeads = null;
+    private volatile long environmentVersionTableBuildMillis = -1;
+    // when the last build of the table started
+    private volatile long environmentVersionTableBuiltAt = 0;
+    // when the EnvironmentVersion of a test was last updated by this webapp, the table is stale for those until rebuilt
+    private final Map<String, Long> updatedAt = CacheBuilder.newBuilder()
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .<String, Long>build()
+        .asMap();
+
+    // Latest version of each store and the latest revision of each of its tests, see watchStore
+    private final Map<Environment, WatchedStore> watchedStores = Maps.newConcurrentMap();
+    private final Map<Environment, Object> watchLocks = ImmutableMap.of(
+        Environment.WORKING, new Object(),
+        Environment.QA, new Object(),
+        Environment.PRODUCTION, new Object());
+    private final AtomicLong storeChanges = new AtomicLong(0);
+    private final AtomicLong invalidations = new AtomicLong(0);
+    private final AtomicLong fastPathChecks = new AtomicLong(0);
+    private final AtomicLong fastPathFallbacks = new AtomicLong(0);
 
     public ProctorPromoter(final ProctorStore trunk,
                            final ProctorStore qa,
                            final ProctorStore production,
                            final ExecutorService executor) {
+        this(trunk, qa, production, executor, 30);
+    }
+
+    /**
+     * @param environmentVersionTtlSeconds time after which a cached EnvironmentVersion is reloaded. Can be long
+     *                                     when out-of-band commits are picked up by {@link #watchStores()}
+     */
+    public ProctorPromoter(final ProctorStore trunk,
+                           final ProctorStore qa,
+                           final ProctorStore production,
+                           final ExecutorService executor,
+                           final long environmentVersionTtlSeconds) {
         this.trunk = trunk;
         this.qa = qa;
         this.production = production;
+        this.environmentVersions = CacheBuilder.newBuilder()
+            .maximumSize(2048)
+            .refreshAfterWrite(environmentVersionTtlSeconds, TimeUnit.SECONDS)
+            .expireAfterWrite(4 * environmentVersionTtlSeconds, TimeUnit.SECONDS)
+            .softValues()
+            .recordStats()
+            .build(environmentVersionLoader);
 
         if (executor instanceof ThreadPoolExecutor) {
             final VarExporter exporter = VarExporter.forNamespace(getClass().getSimpleName());
             exporter.export(new ThreadPoolExecutorVarExports((ThreadPoolExecutor) executor), "ProctorPromoter-pool-");
         }
+        VarExporter.forNamespace(getClass().getSimpleName()).export(this, "");
         this.executor = executor;
     }
 
+    /**
+     * Rebuilds the EnvironmentVersion of every test in one pass from the latest revision of every test in each store
+     * and the current qa and production matrices, if the latest version of any store changed since the last build.
+     * Once built, getEnvironmentVersion reads from this table instead of querying the stores for each test.
+     *
+     * The latest revisions come from the same per store snapshot as {@link #watchStores()}, so a store revision
+     * costs a single scan of its histories whichever of the two sees it first.
+     *
+     * @return true if the table was rebuilt
+     */
+    public boolean refreshEnvironmentVersions() throws StoreException {
+        final long start = System.currentTimeMillis();
+
+        // Check the stores in parallel
+        final Future<WatchedStore> trunkFuture = executor.submit(new WatchStoreTask(Environment.WORKING));
+        final Future<WatchedStore> qaFuture = executor.submit(new WatchStoreTask(Environment.QA));
+        final Future<WatchedStore> productionFuture = executor.submit(new WatchStoreTask(Environment.PRODUCTION));
+        final WatchedStore trunkStore, qaStore, productionStore;
+        try {
+            trunkStore = trunkFuture.get(5, TimeUnit.MINUTES);
+            qaStore = qaFuture.get(5, TimeUnit.MINUTES);
+            productionStore = productionFuture.get(5, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StoreException("Interrupted retrieving the histories of trunk or qa or production", e);
+        } catch (final ExecutionException e) {
+            throw new StoreException("Unable to retrieve the histories of trunk or qa or production", e.getCause());
+        } catch (final TimeoutException e) {
+            trunkFuture.cancel(true);
+            qaFuture.cancel(true);
+            productionFuture.cancel(true);
+            throw new StoreException("Timed out retrieving the histories of trunk or qa or production", e);
+        }
+        final List<String> heads = ImmutableList.of(trunkStore.head, qaStore.head, productionStore.head);
+        if (heads.equals(environmentVersionTableHeads)) {
+            return false;
+        }
+
+        final TestMatrixDefinition qaTestMatrixDefinition = getCurrentTestMatrix(Environment.QA).getTestMatrixDefinition();
+        final TestMatrixDefinition prodTestMatrixDefinition = getCurrentTestMatrix(Environment.PRODUCTION).getTestMatrixDefinition();
+        if (qaTestMatrixDefinition == null || prodTestMatrixDefinition == null) {
+            throw new StoreException("null test matrix returned for qa or production");
+        }
+
+        final Set<String> testNames = Sets.newHashSet(trunkStore.testRevisions.keySet());
+        testNames.addAll(qaStore.testRevisions.keySet());
+        testNames.addAll(productionStore.testRevisions.keySet());
+        final ImmutableMap.Builder<String, EnvironmentVersion> table = ImmutableMap.builder();
+        for (final String testName : testNames) {
+            final Revision trunkRevision = trunkStore.testRevisions.get(testName);
+            final Revision qaRevision = qaStore.testRevisions.get(testName);
+            final Revision productionRevision = productionStore.testRevisions.get(testName);
+            table.put(testName, new EnvironmentVersion(
+                testName,
+                trunkRevision, GitProctorUtils.resolveSvnMigratedRevision(trunkRevision, Environment.WORKING.getName()),
+                qaRevision, identifyEffectiveRevision(qaTestMatrixDefinition.getTests().get(testName), qaRevision),
+                productionRevision, identifyEffectiveRevision(prodTestMatrixDefinition.getTests().get(testName), productionRevision)));
+        }
+
+        environmentVersionTable = table.build();
+        environmentVersionTableHeads = heads;
+        environmentVersionTableBuiltAt = start;
+        environmentVersionTableBuildMillis = System.currentTimeMillis() - start;
+        LOGGER.info("Built EnvironmentVersion of " + testNames.size() + " tests in " + environmentVersionTableBuildMillis + " ms for trunk r" + heads.get(0) + ", qa r" + heads.get(1) + ", production r" + heads.get(2));
+        return true;
+    }
+
+    /**
+     * Compares the latest version of each store with the one seen by the previous check. When a store moved,
+     * invalidates the cached EnvironmentVersion of the tests whose latest revision in that store changed,
+     * including commits that did not go through this webapp.
+     *
+     * The first check of a store only records its current state.
+     */
+    public void watchStores() throws StoreException {
+        for (final Environment environment : Environment.values()) {
+            watchStore(environment);
+        }
+    }
+
+    /**
+     * @return the latest revision of every test in the store, scanned again only when the latest version of the
+     * store moved since the previous check (see {@link #watchStores()})
+     */
+    private WatchedStore watchStore(final Environment environment) throws StoreException {
+        synchronized (watchLocks.get(environment)) {
+            final ProctorStore store = getStoreFromBranch(environment);
+            final String head = store.getLatestVersion();
+            final WatchedStore watched = watchedStores.get(environment);
+            if (watched != null && head.equals(watched.head)) {
+                return watched;
+            }
+            final ImmutableMap.Builder<String, Revision> builder = ImmutableMap.builder();
+            for (final Map.Entry<String, List<Revision>> entry : store.getAllHistories().entrySet()) {
+                final Revision latest = getMostRecent(entry.getValue());
+                if (latest != null) {
+                    builder.put(entry.getKey(), latest);
+                }
+            }
+            final Map<String, Revision> testRevisions = builder.build();
+
+            if (watched != null) {
+                final Map<String, Revision> previous = watched.testRevisions;
+                final Set<String> changed = Sets.newHashSet();
+                for (final Map.Entry<String, Revision> entry : testRevisions.entrySet()) {
+                    final Revision previousRevision = previous.get(entry.getKey());
+                    if (previousRevision == null || !entry.getValue().getRevision().equals(previousRevision.getRevision())) {
+                        changed.add(entry.getKey());
+                    }
+                }
+                // deleted tests
+                changed.addAll(Sets.difference(previous.keySet(), testRevisions.keySet()));
+
+                final long now = System.currentTimeMillis();
+                for (final String testName : changed) {
+                    // the bulk table is stale for these tests until it is rebuilt
+                    updatedAt.put(testName, now);
+                }
+                // reload the tests someone looked at, the others are loaded when requested
+                final Set<String> viewed = Sets.newHashSet(Sets.intersection(changed, environmentVersions.asMap().keySet()));
+                environmentVersions.invalidateAll(changed);
+                prefetchEnvironmentVersions(viewed);
+                storeChanges.incrementAndGet();
+                invalidations.addAndGet(changed.size());
+                LOGGER.info(environment + " moved from r" + watched.head + " to r" + head + ", invalidated EnvironmentVersion of " + changed.size() + " tests");
+            }
+            final WatchedStore updated = new WatchedStore(head, testRevisions);
+            watchedStores.put(environment, updated);
+            return updated;
+        }
+    }
+
+    /**
+     * Returns the latest revision of the test in the store as last seen by {@link #watchStores()}, if the store
+     * did not move since. This costs a lookup of the latest version of the store instead of a history query,
+     * and nothing when there is no watched revision to check: the caller then queries the history anyway.
+     *
+     * @return null if the store was not watched yet or moved since, or if the test has no history in it
+     */
+    // @Nullable
+    private Revision getWatchedRevision(final Environment environment, final String testName) throws StoreException {
+        final WatchedStore watched = watchedStores.get(environment);
+        if (watched == null) {
+            // the store watcher is disabled (promoter.store.watch.seconds=0) or did not run yet
+            return null;
+        }
+        final Revision revision = watched.testRevisions.get(testName);
+        if (revision == null || !watched.head.equals(getStoreFromBranch(environment).getLatestVersion())) {
+            return null;
+        }
+        return revision;
+    }
+
+    private static class WatchedStore {
+        final String head;
+        final Map<String, Revision> testRevisions;
+
+        WatchedStore(final String head, final Map<String, Revision> testRevisions) {
+            this.head = head;
+            this.testRevisions = testRevisions;
+        }
+    }
+
+    @Export(name = "promotion-fast-path-checks", doc = "Number of promotion revision checks answered by the watched store revisions, without a history query")
+    public long getFastPathChecks() {
+        return fastPathChecks.get();
+    }
+
+    @Export(name = "promotion-fast-path-fallbacks", doc = "Number of promotion revision checks that needed a history query because the watched revisions were stale or disagreed")
+    public long getFastPathFallbacks() {
+        return fastPathFallbacks.get();
+    }
+
+    @Export(name = "store-changes", doc = "Number of new store revisions detected by the store watcher")
+    public long getStoreChanges() {
+        return storeChanges.get();
+    }
+
+    @Export(name = "store-change-invalidations", doc = "Number of EnvironmentVersion entries invalidated because their test changed in a store")
+    public long getStoreChangeInvalidations() {
+        return invalidations.get();
+    }
+
+    @Export(name = "environment-version-table-size", doc = "Number of tests in the bulk EnvironmentVersion table, -1 if it was not built")
+    public int getEnvironmentVersionTableSize() {
+        final Map<String, EnvironmentVersion> table = environmentVersionTable;
+        return table != null ? table.size() : -1;
+    }
+
+    @Export(name = "environment-version-table-build-ms", doc = "Duration of the last build of the bulk EnvironmentVersion table")
+    public long getEnvironmentVersionTableBuildMillis() {
+        return environmentVersionTableBuildMillis;
+    }
+
     public void promoteTrunkToQa(final String testName, String trunkRevision, String qaRevision,
                                  String username, String password, Map<String, String> metadata) throws StoreException, TestPromotionException {
         promote(testName, Environment.WORKING, trunkRevision, Environment.QA, qaRevision, username, password, metadata);
@@ -88,6 +381,11 @@ public class ProctorPromoter {
         } else {
             updated = current.update(branch, trunkVersion, trunkVersion.getRevision().toString());
         }
+        putUpdatedVersion(testName, updated);
+    }
+
+    private void putUpdatedVersion(final String testName, final EnvironmentVersion updated) {
+        updatedAt.put(testName, System.currentTimeMillis());
         environmentVersions.put(testName, updated);
     }
 
@@ -100,7 +398,7 @@ public class ProctorPromoter {
         final List<Revision> history = getMostRecentHistory(store, testName);
         final Revision destVersion = history.get(0);
         final EnvironmentVersion updated = current.update(branch, destVersion, effectiveVersion);
-        environmentVersions.put(testName, updated);
+        putUpdatedVersion(testName, updated);
     }
 
     @SuppressWarnings({"MethodWithTooManyParameters"})
@@ -108,6 +406,47 @@ public class ProctorPromoter {
                          String username, String password, Map<String, String> metadata) throws TestPromotionException, StoreException {
         LOGGER.info(String.format("%s : Promoting %s from %s r%s to %s r%s", username, testName, srcBranch,
                 srcRevision, destBranch, destRevision));
+        final PreparedPromotion promotion = preparePromotion(testName, srcBranch, srcRevision, destBranch, destRevision);
+        commitPromotion(promotion, username, password, metadata);
+    }
+
+    /**
+     * Promotes several tests from one branch to another. Every test is validated before the first one is
+     * committed, so that a stale destination revision or a missing history fails the whole batch up front.
+     *
+     * The stores only commit one test definition at a time, so each test is still its own commit. If a
+     * commit fails, the tests before it stay promoted and the remaining ones are not attempted.
+     *
+     * @param beforeCommit called right before the commit of each test, its failure fails that commit
+     * @throws PartialPromotionException if a commit failed, with the tests that were and were not promoted
+     */
+    public void promoteAll(final Environment srcBranch,
+                           final Environment destBranch,
+                           final List<TestPromotion> promotions,
+                           final String username,
+                           final String password,
+                           final Map<String, String> metadata,
+                           final BeforeCommit beforeCommit) throws TestPromotionException, StoreException, PartialPromotionException {
+        LOGGER.info(String.format("%s : Promoting %d tests from %s to %s", username, promotions.size(), srcBranch, destBranch));
+        final List<PreparedPromotion> prepared = Lists.newArrayListWithCapacity(promotions.size());
+        for (final TestPromotion promotion : promotions) {
+            prepared.add(preparePromotion(promotion.getTestName(), srcBranch, promotion.getSrcRevision(), destBranch, promotion.getDestRevision()));
+        }
+        int promoted = 0;
+        for (final PreparedPromotion promotion : prepared) {
+            try {
+                beforeCommit.beforeCommit(promotions.get(promoted));
+                commitToStore(promotion, username, password, metadata);
+                promoted++;
+                updateTestVersion(promotion.testName, promotion.destBranch, promotion.definition.getVersion());
+            } catch (final Exception e) {
+                throw new PartialPromotionException(promotions.subList(0, promoted), promotions.subList(promoted, promotions.size()), e);
+            }
+        }
+    }
+
+    private PreparedPromotion preparePromotion(final String testName, final Environment srcBranch, final String srcRevision,
+                                               final Environment destBranch, final String destRevision) throws TestPromotionException, StoreException {
         final ProctorStore src = getStoreFromBranch(srcBranch);
         final ProctorStore dest = getStoreFromBranch(destBranch);
         final boolean isSrcTrunk = Environment.WORKING == srcBranch;
@@ -125,11 +464,20 @@ public class ProctorPromoter {
             throw new TestPromotionException("Non-Positive revision r" + destRevision + " given for destination ( " + destBranch + " ) but '" + testName + "' exists.");
         }
 
-        final List<Revision> srcHistory = getHistoryFromRevision(src, testName, srcRevision);
-        if(srcHistory.isEmpty()) {
-            throw new TestPromotionException("Could not find history for " + testName + " at revision " + srcRevision);
+        final Revision srcVersion;
+        final Revision watchedSrcVersion = getWatchedRevision(srcBranch, testName);
+        if (watchedSrcVersion != null && watchedSrcVersion.getRevision().equals(srcRevision)) {
+            // promoting the latest revision of the source, which did not move since it was watched
+            fastPathChecks.incrementAndGet();
+            srcVersion = watchedSrcVersion;
+        } else {
+            fastPathFallbacks.incrementAndGet();
+            final List<Revision> srcHistory = getHistoryFromRevision(src, testName, srcRevision);
+            if(srcHistory.isEmpty()) {
+                throw new TestPromotionException("Could not find history for " + testName + " at revision " + srcRevision);
+            }
+            srcVersion = srcHistory.get(0);
         }
-        final Revision srcVersion = srcHistory.get(0);
 
         // Update the Test Definition Version to the svn-revision of the source (if it is a migrated commit)
         final String effectiveRevision = GitProctorUtils.resolveSvnMigratedRevision(srcVersion, Environment.WORKING.getName());
@@ -139,7 +487,13 @@ public class ProctorPromoter {
             d.setVersion(effectiveRevision);
         }
 
-        if(!knownDestRevision.equals(EnvironmentVersion.UNKNOWN_REVISION) && knownDestRevision.length() > 0) {
+        final boolean exists = !knownDestRevision.equals(EnvironmentVersion.UNKNOWN_REVISION) && knownDestRevision.length() > 0;
+        final Revision watchedDestVersion = exists ? getWatchedRevision(destBranch, testName) : null;
+        if (watchedDestVersion != null && watchedDestVersion.getRevision().equals(destRevision)) {
+            // the destination did not move since it was watched and the test is still at the expected revision
+            fastPathChecks.incrementAndGet();
+        } else if(exists) {
+            fastPathFallbacks.incrementAndGet();
             // This test exists in the destination branch. Get its most recent test-history in the event that EnvironmentVersion is stale.
             List<Revision> history = getMostRecentHistory(dest, testName);
             if(history.isEmpty()) {
@@ -149,16 +503,64 @@ public class ProctorPromoter {
             if(!destVersion.getRevision().equals(destRevision)) {
                 throw new IllegalArgumentException("Test '" + testName + "' updated since " + destRevision + ". Currently at " + history.get(0).getRevision());
             }
-            final String commitMessage = formatCommitMessage(testName , srcBranch, effectiveRevision, destBranch, srcVersion.getMessage());
-            LOGGER.info(String.format("%s : Committing %s from %s r%s to %s r%s", username, testName, srcBranch,
-                    srcRevision, destBranch, destRevision));
-            dest.updateTestDefinition(username, password, destRevision, testName, d, metadata, commitMessage);
+        }
+        final String commitMessage = formatCommitMessage(testName , srcBranch, effectiveRevision, destBranch, srcVersion.getMessage());
+        return new PreparedPromotion(testName, srcBranch, srcRevision, destBranch, destRevision, d, commitMessage, exists);
+    }
+
+    private void commitPromotion(final PreparedPromotion promotion,
+                                 final String username,
+                                 final String password,
+                                 final Map<String, String> metadata) throws StoreException {
+        commitToStore(promotion, username, password, metadata);
+        updateTestVersion(promotion.testName, promotion.destBranch, promotion.definition.getVersion());
+    }
+
+    private void commitToStore(final PreparedPromotion promotion,
+                               final String username,
+                               final String password,
+                               final Map<String, String> metadata) throws StoreException {
+        final ProctorStore dest = getStoreFromBranch(promotion.destBranch);
+        if(promotion.exists) {
+            LOGGER.info(String.format("%s : Committing %s from %s r%s to %s r%s", username, promotion.testName, promotion.srcBranch,
+                    promotion.srcRevision, promotion.destBranch, promotion.destRevision));
+            dest.updateTestDefinition(username, password, promotion.destRevision, promotion.testName, promotion.definition, metadata, promotion.commitMessage);
         } else {
-            final String commitMessage = formatCommitMessage(testName , srcBranch, effectiveRevision, destBranch, srcVersion.getMessage());
-            dest.addTestDefinition(username, password, testName, d, metadata, commitMessage);
+            dest.addTestDefinition(username, password, promotion.testName, promotion.definition, metadata, promotion.commitMessage);
         }
+    }
 
-        updateTestVersion(testName, destBranch, d.getVersion());
+    /**
+     * A validated promotion, ready to be committed to the destination branch
+     */
+    private static class PreparedPromotion {
+        final String testName;
+        final Environment srcBranch;
+        final String srcRevision;
+        final Environment destBranch;
+        final String destRevision;
+        final TestDefinition definition;
+        final String commitMessage;
+        // whether the test exists in the destination branch and has to be updated rather than added
+        final boolean exists;
+
+        PreparedPromotion(final String testName,
+                          final Environment srcBranch,
+                          final String srcRevision,
+                          final Environment destBranch,
+                          final String destRevision,
+                          final TestDefinition definition,
+                          final String commitMessage,
+                          final boolean exists) {
+            this.testName = testName;
+            this.srcBranch = srcBranch;
+            this.srcRevision = srcRevision;
+            this.destBranch = destBranch;
+            this.destRevision = destRevision;
+            this.definition = definition;
+            this.commitMessage = commitMessage;
+            this.exists = exists;
+        }
     }
 
     private ProctorStore getStoreFromBranch(Environment srcBranch) {
@@ -184,67 +586,163 @@ public class ProctorPromoter {
         return sb.toString();
     }
 
-    public EnvironmentVersion getEnvironmentVersion(final String testName) {
-        final EnvironmentVersion environmentVersion = environmentVersions.getIfPresent(testName);
-        if (environmentVersion != null) {
-         return environmentVersion;
-        } else {
-            final List<Revision> trunkHistory, qaHistory, productionHistory;
+    /**
+     * Sizes the per store lookup executors. Without it, each store gets 3 threads and room for 30 pending lookups.
+     */
+    @Autowired(required = false)
+    public synchronized void setLookupConfiguration(final WebappConfiguration configuration) {
+        if (lookupExecutors != null) {
+            LOGGER.warn("Lookup executors already created, ignoring the configuration");
+            return;
+        }
+        lookupExecutors = createLookupExecutors(configuration.getPromoterLookupThreads(), configuration.getPromoterLookupQueueCapacity());
+        lookupTimeoutMillis = configuration.getPromoterLookupTimeout();
+        prefetchRate = configuration.getPromoterPrefetchRate();
+    }
 
-            // Fetch versions in parallel
-            final Future<List<Revision>> trunkFuture = executor.submit(new GetEnvironmentVersionTask(trunk, testName));
-            final Future<List<Revision>> qaFuture = executor.submit(new GetEnvironmentVersionTask(qa, testName));
-            final Future<List<Revision>> productionFuture = executor.submit(new GetEnvironmentVersionTask(production, testName));
-            try {
-                trunkHistory = trunkFuture.get(30, TimeUnit.SECONDS);
-                qaHistory = qaFuture.get(30, TimeUnit.SECONDS);
-                productionHistory = productionFuture.get(30, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                LOGGER.error("Unable to retrieve latest version for trunk or qa or production", e);
-                return null;
-            } catch (ExecutionException e) {
-                LOGGER.error("Unable to retrieve latest version for trunk or qa or production", e);
-                return null;
-            } catch (TimeoutException e) {
-                LOGGER.error("Timed out when retrieving latest version for trunk or qa or production", e);
-                trunkFuture.cancel(true);
-                qaFuture.cancel(true);
-                productionFuture.cancel(true);
-                return null;
-            }
+    @Autowired(required = false)
+    public void setMatrixCache(final CurrentMatrixCache matrixCache) {
+        this.matrixCache = matrixCache;
+    }
 
-            final Revision trunkRevision = trunkHistory.isEmpty() ? null : trunkHistory.get(0);
-            final Revision qaRevision = qaHistory.isEmpty() ? null : qaHistory.get(0);
-            final Revision productionRevision = productionHistory.isEmpty() ? null : productionHistory.get(0);
+    private TestMatrixVersion getCurrentTestMatrix(final Environment environment) throws StoreException {
+        if (matrixCache != null) {
+            return matrixCache.get(environment).getTestMatrixVersion();
+        }
+        return getStoreFromBranch(environment).getCurrentTestMatrix();
+    }
 
-            final String trunkVersion = GitProctorUtils.resolveSvnMigratedRevision(trunkRevision, Environment.WORKING.getName());
+    private synchronized Map<Environment, InstrumentedExecutor> getLookupExecutors() {
+        if (lookupExecutors == null) {
+            lookupExecutors = createLookupExecutors(3, 30);
+        }
+        return lookupExecutors;
+    }
 
-            final TestMatrixDefinition qaTestMatrixDefinition, prodTestMatrixDefinition;
+    /**
+     * Loads the EnvironmentVersion of the given tests in the background, on a low priority thread and at most
+     * promoter.prefetch.rate tests per second, so that opening one of them does not wait for its history lookups.
+     * Tests already cached are skipped, and tests that do not fit in the prefetch queue are dropped.
+     */
+    public void prefetchEnvironmentVersions(final Collection<String> testNames) {
+        final EnvironmentVersionPrefetcher prefetcher = getPrefetcher();
+        if (prefetcher != null && !testNames.isEmpty()) {
+            prefetcher.prefetch(testNames);
+        }
+    }
 
-            try {
-                qaTestMatrixDefinition = qa.getCurrentTestMatrix().getTestMatrixDefinition();
-                prodTestMatrixDefinition = production.getCurrentTestMatrix().getTestMatrixDefinition();
-            } catch (StoreException e) {
-                LOGGER.error("Unable to retrieve test matrix for qa or production", e);
-                return null;
-            }
+    // @Nullable - null when prefetching is disabled
+    private synchronized EnvironmentVersionPrefetcher getPrefetcher() {
+        if (prefetcher == null && prefetchRate > 0) {
+            // as many tests as the cache holds
+            prefetcher = new EnvironmentVersionPrefetcher(environmentVersions, prefetchRate, 2048);
+            VarExporter.forNamespace(getClass().getSimpleName()).export(prefetcher, "prefetch-");
+        }
+        return prefetcher;
+    }
 
-            if (qaTestMatrixDefinition == null || prodTestMatrixDefinition == null) {
-                LOGGER.error("null test matrix returned for qa or production");
-                return null;
+    private Map<Environment, InstrumentedExecutor> createLookupExecutors(final int threads, final int queueCapacity) {
+        final VarExporter exporter = VarExporter.forNamespace(getClass().getSimpleName());
+        final Map<Environment, InstrumentedExecutor> executors = Maps.newEnumMap(Environment.class);
+        for (final Environment environment : Environment.values()) {
+            final InstrumentedExecutor lookupExecutor = new InstrumentedExecutor("ProctorPromoter-" + environment.getName() + "-lookup", threads, queueCapacity);
+            lookupExecutor.export(exporter, environment.getName() + "-lookup-");
+            executors.put(environment, lookupExecutor);
+        }
+        return ImmutableMap.copyOf(executors);
+    }
+
+    // @Nullable
+    public EnvironmentVersion getEnvironmentVersion(final String testName) {
+        try {
+            return environmentVersions.get(testName);
+        } catch (final ExecutionException e) {
+            // the failure was logged by loadEnvironmentVersion
+            return null;
+        } catch (final UncheckedExecutionException e) {
+            LOGGER.error("Unable to load EnvironmentVersion of " + testName, e.getCause());
+            return null;
+        }
+    }
+
+    private EnvironmentVersion loadEnvironmentVersion(final String testName) throws EnvironmentVersionUnavailableException {
+        // the bulk table is current up to the last check of the stores' latest versions
+        final Map<String, EnvironmentVersion> table = environmentVersionTable;
+        final EnvironmentVersion tableVersion = table != null ? table.get(testName) : null;
+        final Long updated = updatedAt.get(testName);
+        if (tableVersion != null && (updated == null || updated < environmentVersionTableBuiltAt)) {
+            return tableVersion;
+        }
+
+        final List<Revision> trunkHistory, qaHistory, productionHistory;
+
+        // Fetch versions in parallel, each store on its own executor so that a slow store does not hold up the others
+        final Map<Environment, InstrumentedExecutor> executors = getLookupExecutors();
+        final List<Future<List<Revision>>> futures = Lists.newArrayListWithCapacity(3);
+        try {
+            futures.add(executors.get(Environment.WORKING).submit(new GetEnvironmentVersionTask(trunk, testName)));
+            futures.add(executors.get(Environment.QA).submit(new GetEnvironmentVersionTask(qa, testName)));
+            futures.add(executors.get(Environment.PRODUCTION).submit(new GetEnvironmentVersionTask(production, testName)));
+        } catch (final RejectedExecutionException e) {
+            // fail fast rather than queueing behind a slow store
+            LOGGER.warn("Too many pending lookups, not retrieving latest version of " + testName + " for trunk or qa or production");
+            for (final Future<List<Revision>> future : futures) {
+                future.cancel(true);
             }
+            throw new EnvironmentVersionUnavailableException();
+        }
+        final Future<List<Revision>> trunkFuture = futures.get(0);
+        final Future<List<Revision>> qaFuture = futures.get(1);
+        final Future<List<Revision>> productionFuture = futures.get(2);
+        try {
+            final long deadline = System.currentTimeMillis() + lookupTimeoutMillis;
+            trunkHistory = trunkFuture.get(lookupTimeoutMillis, TimeUnit.MILLISECONDS);
+            qaHistory = qaFuture.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            productionHistory = productionFuture.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            LOGGER.error("Unable to retrieve latest version for trunk or qa or production", e);
+            throw new EnvironmentVersionUnavailableException();
+        } catch (ExecutionException e) {
+            LOGGER.error("Unable to retrieve latest version for trunk or qa or production", e);
+            throw new EnvironmentVersionUnavailableException();
+        } catch (TimeoutException e) {
+            LOGGER.error("Timed out when retrieving latest version for trunk or qa or production", e);
+            trunkFuture.cancel(true);
+            qaFuture.cancel(true);
+            productionFuture.cancel(true);
+            throw new EnvironmentVersionUnavailableException();
+        }
 
-            final String qaVersion = identifyEffectiveRevision(qaTestMatrixDefinition.getTests().get(testName), qaRevision);
-            final String prodVersion = identifyEffectiveRevision(prodTestMatrixDefinition.getTests().get(testName), productionRevision);
+        final Revision trunkRevision = trunkHistory.isEmpty() ? null : trunkHistory.get(0);
+        final Revision qaRevision = qaHistory.isEmpty() ? null : qaHistory.get(0);
+        final Revision productionRevision = productionHistory.isEmpty() ? null : productionHistory.get(0);
 
-            final EnvironmentVersion newEnvironmentVersion = new EnvironmentVersion(
-                testName,
-                trunkRevision, trunkVersion,
-                qaRevision, qaVersion,
-                productionRevision, prodVersion);
-            environmentVersions.put(testName, newEnvironmentVersion);
-            return newEnvironmentVersion;
+        final String trunkVersion = GitProctorUtils.resolveSvnMigratedRevision(trunkRevision, Environment.WORKING.getName());
+
+        final TestMatrixDefinition qaTestMatrixDefinition, prodTestMatrixDefinition;
+
+        try {
+            qaTestMatrixDefinition = getCurrentTestMatrix(Environment.QA).getTestMatrixDefinition();
+            prodTestMatrixDefinition = getCurrentTestMatrix(Environment.PRODUCTION).getTestMatrixDefinition();
+        } catch (StoreException e) {
+            LOGGER.error("Unable to retrieve test matrix for qa or production", e);
+            throw new EnvironmentVersionUnavailableException();
+        }
+
+        if (qaTestMatrixDefinition == null || prodTestMatrixDefinition == null) {
+            LOGGER.error("null test matrix returned for qa or production");
+            throw new EnvironmentVersionUnavailableException();
         }
+
+        final String qaVersion = identifyEffectiveRevision(qaTestMatrixDefinition.getTests().get(testName), qaRevision);
+        final String prodVersion = identifyEffectiveRevision(prodTestMatrixDefinition.getTests().get(testName), productionRevision);
+
+        final EnvironmentVersion newEnvironmentVersion = new EnvironmentVersion(
+            testName,
+            trunkRevision, trunkVersion,
+            qaRevision, qaVersion,
+            productionRevision, prodVersion);
+        return newEnvironmentVersion;
     }
 
     private static class GetEnvironmentVersionTask implements Callable<List<Revision>> {
@@ -262,7 +760,24 @@ public class ProctorPromoter {
         }
     }
 
-    private final Pattern CHARM_MERGE_REVISION = Pattern.compile("^merged r([\\d]+):", Pattern.MULTILINE);
+    private class WatchStoreTask implements Callable<WatchedStore> {
+        final Environment environment;
+
+        WatchStoreTask(final Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public WatchedStore call() throws Exception {
+            return watchStore(environment);
+        }
+    }
+
+    // @Nullable
+    private static Revision getMostRecent(final List<Revision> history) {
+        return history == null || history.isEmpty() ? null : history.get(0);
+    }
+
     private String identifyEffectiveRevision(final TestDefinition branchDefinition,
                                              final Revision branchRevision) {
         if(branchDefinition == null) {
@@ -271,9 +786,8 @@ public class ProctorPromoter {
         if(branchRevision == null) {
             return branchDefinition.getVersion();
         }
-        final Matcher m = CHARM_MERGE_REVISION.matcher(branchRevision.getMessage());
-        if(m.find()) {
-            final String trunkRevision = m.group(1);
+        final String trunkRevision = RevisionMetadata.of(branchRevision).getCharmedRevision();
+        if(trunkRevision != null) {
             return trunkRevision;
         }
         return branchDefinition.getVersion();
@@ -299,6 +813,62 @@ public class ProctorPromoter {
         return store.getTestDefinition(testName, version);
     }
 
+    @Export(name = "environment-version-hits", doc = "Number of EnvironmentVersion lookups served from the cache")
+    public long getEnvironmentVersionHits() {
+        return environmentVersions.stats().hitCount();
+    }
+
+    @Export(name = "environment-version-misses", doc = "Number of EnvironmentVersion lookups that waited for a load, including coalesced ones")
+    public long getEnvironmentVersionMisses() {
+        return environmentVersions.stats().missCount();
+    }
+
+    @Export(name = "environment-version-coalesced", doc = "Number of EnvironmentVersion misses that waited for a load started by another request")
+    public long getEnvironmentVersionCoalesced() {
+        return Math.max(0, environmentVersions.stats().missCount() - loads.get());
+    }
+
+    @Export(name = "environment-version-refreshes", doc = "Number of EnvironmentVersion entries reloaded in the background")
+    public long getEnvironmentVersionRefreshes() {
+        return refreshes.get();
+    }
+
+    private static class EnvironmentVersionUnavailableException extends Exception {
+    }
+
+    public static class TestPromotion {
+        private final String testName;
+        private final String srcRevision;
+        private final String destRevision;
+
+        public TestPromotion(final String testName,
+                             final String srcRevision,
+                             final String destRevision) {
+            this.testName = testName;
+            this.srcRevision = srcRevision;
+            this.destRevision = destRevision;
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        public String getSrcRevision() {
+            return srcRevision;
+        }
+
+        public String getDestRevision() {
+            return destRevision;
+        }
+    }
+
+    /**
+     * Runs the work that must only happen for a test of {@link #promoteAll} that is about to be committed
+     */
+    public interface BeforeCommit {
+        void beforeCommit(TestPromotion promotion) throws Exception;
+    }
+
     public static class TestPromotionException extends Exception {
 
         public TestPromotionException(final String message) {
@@ -310,4 +880,29 @@ public class ProctorPromoter {
         }
     }
 
+    /**
+     * A commit of {@link #promoteAll} failed after the tests before it were committed.
+     * The cause is the exception of the failed commit.
+     */
+    public static class PartialPromotionException extends Exception {
+        private final List<TestPromotion> promoted;
+        private final List<TestPromotion> notPromoted;
+
+        public PartialPromotionException(final List<TestPromotion> promoted,
+                                         final List<TestPromotion> notPromoted,
+                                         final Throwable cause) {
+            super(String.format("Promoted %d of %d tests", promoted.size(), promoted.size() + notPromoted.size()), cause);
+            this.promoted = ImmutableList.copyOf(promoted);
+            this.notPromoted = ImmutableList.copyOf(notPromoted);
+        }
+
+        public List<TestPromotion> getPromoted() {
+            return promoted;
+        }
+
+        public List<TestPromotion> getNotPromoted() {
+            return notPromoted;
+        }
+    }
+
 }
@@ -0,0 +1,97 @@
+package com.indeed.proctor.common;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.webapp.db.Environment;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What the commit message of a revision says about where its change comes from:
+ * the (branch rXXX) references written by promotions, and the revision of a charm merge ("merged rXXX:").
+ *
+ * Parsed once per {@link Revision} instance and kept as long as that instance is reachable: the history page
+ * checks every revision of a test against every environment on each render, and the histories are cached by the store.
+ */
+public class RevisionMetadata {
+    private static final RevisionMetadata EMPTY = new RevisionMetadata(ImmutableSetMultimap.<Environment, String>of(), null, false);
+
+    // Promotions format their commit message as "Promoting {testName} ({branch} r{revision}) to {destination}"
+    private static final Pattern PROMOTED_REVISION = Pattern.compile("(" + Environment.WORKING.getName() + "|" + Environment.QA.getName() + "|" + Environment.PRODUCTION.getName() + ") r([0-9a-zA-Z]+)");
+    private static final Pattern CHARM_MERGE_REVISION = Pattern.compile("^merged r([0-9a-zA-Z]+):", Pattern.MULTILINE);
+
+    // weak keys compare by identity, so each Revision is parsed once and dropped along with the history holding it
+    private static final LoadingCache<Revision, RevisionMetadata> INDEX = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Revision, RevisionMetadata>() {
+                @Override
+                public RevisionMetadata load(final Revision revision) {
+                    return parse(revision.getMessage());
+                }
+            });
+
+    // every (branch rXXX) reference of the message, including the ones of the promotions it quotes
+    private final SetMultimap<Environment, String> promotedRevisions;
+    // @Nullable
+    private final String charmedRevision;
+    private final boolean charmedAtStart;
+
+    private RevisionMetadata(final SetMultimap<Environment, String> promotedRevisions,
+                             final String charmedRevision,
+                             final boolean charmedAtStart) {
+        this.promotedRevisions = promotedRevisions;
+        this.charmedRevision = charmedRevision;
+        this.charmedAtStart = charmedAtStart;
+    }
+
+    public static RevisionMetadata of(final Revision revision) {
+        if (revision == null || revision.getMessage() == null) {
+            return EMPTY;
+        }
+        return INDEX.getUnchecked(revision);
+    }
+
+    static RevisionMetadata parse(final String message) {
+        final ImmutableSetMultimap.Builder<Environment, String> promoted = ImmutableSetMultimap.builder();
+        final Matcher promotedMatcher = PROMOTED_REVISION.matcher(message);
+        while (promotedMatcher.find()) {
+            promoted.put(Environment.fromName(promotedMatcher.group(1)), promotedMatcher.group(2));
+        }
+
+        final Matcher charmMatcher = CHARM_MERGE_REVISION.matcher(message);
+        final String charmedRevision;
+        final boolean charmedAtStart;
+        if (charmMatcher.find()) {
+            charmedRevision = charmMatcher.group(1);
+            charmedAtStart = charmMatcher.start() == 0;
+        } else {
+            charmedRevision = null;
+            charmedAtStart = false;
+        }
+        return new RevisionMetadata(promoted.build(), charmedRevision, charmedAtStart);
+    }
+
+    /**
+     * @return true if the message references the given revision of the given branch, as promotions do
+     */
+    public boolean isPromotedFrom(final Environment branch, final String revision) {
+        return promotedRevisions.containsEntry(branch, revision);
+    }
+
+    /**
+     * @return true if the message starts with "merged r{revision}:"
+     */
+    public boolean isCharmedFrom(final String revision) {
+        return charmedAtStart && charmedRevision.equals(revision);
+    }
+
+    // @Nullable - the revision of the first line starting with "merged rXXX:"
+    public String getCharmedRevision() {
+        return charmedRevision;
+    }
+}
@@ -0,0 +1,204 @@
+package com.indeed.proctor.webapp;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.webapp.model.ProctorClientApplication;
+import com.indeed.util.varexport.Export;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per client instance circuit breaker for specification requests. Instances are told apart by their base
+ * application URL: the applications and instances sharing a host each have their own breaker.
+ *
+ * After failureThreshold consecutive failures an instance is OPEN: it is not asked again until its
+ * backoff expires. Then a single request is let through (HALF_OPEN); success closes the breaker,
+ * failure opens it again with twice the backoff, up to maxBackoff.
+ */
+class ClientCircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    // 0 disables the breaker
+    private volatile int failureThreshold = 3;
+    private volatile long backoff = TimeUnit.MINUTES.toMillis(5);
+    private volatile long maxBackoff = TimeUnit.HOURS.toMillis(2);
+
+    private final Map<String, Breaker> breakers = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .<String, Breaker>build()
+            .asMap();
+
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    void setFailureThreshold(final int failureThreshold) {
+        Preconditions.checkArgument(failureThreshold >= 0, "failureThreshold >= 0");
+        this.failureThreshold = failureThreshold;
+    }
+
+    void setBackoff(final long backoff) {
+        Preconditions.checkArgument(backoff > 0, "backoff > 0");
+        this.backoff = backoff;
+    }
+
+    void setMaxBackoff(final long maxBackoff) {
+        Preconditions.checkArgument(maxBackoff > 0, "maxBackoff > 0");
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @return null if a request to the client may be sent, otherwise why it may not
+     */
+    // @Nullable
+    String tryAcquire(final ProctorClientApplication client) {
+        if (failureThreshold == 0) {
+            return null;
+        }
+        final Breaker breaker = breakers.get(key(client));
+        if (breaker == null) {
+            return null;
+        }
+        final String rejection = breaker.tryAcquire(System.currentTimeMillis());
+        if (rejection != null) {
+            rejected.incrementAndGet();
+        }
+        return rejection;
+    }
+
+    void recordSuccess(final ProctorClientApplication client) {
+        final Breaker breaker = breakers.get(key(client));
+        if (breaker != null) {
+            breaker.recordSuccess();
+        }
+    }
+
+    /**
+     * @return the state of the breaker after the failure
+     */
+    State recordFailure(final ProctorClientApplication client) {
+        if (failureThreshold == 0) {
+            return State.CLOSED;
+        }
+        Breaker breaker = breakers.get(key(client));
+        if (breaker == null) {
+            final Breaker created = new Breaker();
+            breaker = breakers.putIfAbsent(key(client), created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker.recordFailure(System.currentTimeMillis(), failureThreshold, backoff, Math.max(backoff, maxBackoff));
+    }
+
+    private static String key(final ProctorClientApplication client) {
+        return client.getBaseApplicationUrl();
+    }
+
+    @Export(name = "open", doc = "Number of client instances whose circuit breaker is open or half-open")
+    public int getOpen() {
+        int open = 0;
+        for (final Breaker breaker : breakers.values()) {
+            if (breaker.getState() != State.CLOSED) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    @Export(name = "rejected", doc = "Number of specification requests not sent because the circuit breaker of the instance was open")
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Export(name = "states", doc = "Circuit breaker state of every client instance that is not closed")
+    public String getStates() {
+        final List<String> states = Lists.newArrayList();
+        for (final Map.Entry<String, Breaker> entry : breakers.entrySet()) {
+            final String description = entry.getValue().describe();
+            if (description != null) {
+                states.add(entry.getKey() + "=" + description);
+            }
+        }
+        return Joiner.on(", ").join(states);
+    }
+
+    private static class Breaker {
+        private State state = State.CLOSED;
+        private int consecutiveFailures = 0;
+        private long currentBackoff = 0;
+        private long openUntil = 0;
+
+        synchronized State getState() {
+            return state;
+        }
+
+        // @Nullable
+        synchronized String tryAcquire(final long now) {
+            switch (state) {
+                case CLOSED:
+                    return null;
+                case OPEN:
+                    if (now >= openUntil) {
+                        // let a single probe through
+                        state = State.HALF_OPEN;
+                        openUntil = now + currentBackoff;
+                        return null;
+                    }
+                    return "circuit breaker OPEN after " + consecutiveFailures + " consecutive failures, retrying after " + new Date(openUntil);
+                case HALF_OPEN:
+                default:
+                    if (now >= openUntil) {
+                        // the probe never reported back (e.g. it was cancelled), send another one
+                        openUntil = now + currentBackoff;
+                        return null;
+                    }
+                    return "circuit breaker HALF_OPEN, waiting for the probe request";
+            }
+        }
+
+        synchronized void recordSuccess() {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            currentBackoff = 0;
+        }
+
+        synchronized State recordFailure(final long now, final int failureThreshold, final long backoff, final long maxBackoff) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN) {
+                currentBackoff = Math.min(currentBackoff * 2, maxBackoff);
+                open(now);
+            } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+                currentBackoff = backoff;
+                open(now);
+            }
+            return state;
+        }
+
+        private void open(final long now) {
+            state = State.OPEN;
+            openUntil = now + currentBackoff;
+        }
+
+        // @Nullable
+        synchronized String describe() {
+            switch (state) {
+                case OPEN:
+                    return "OPEN until " + new Date(openUntil);
+                case HALF_OPEN:
+                    return "HALF_OPEN";
+                case CLOSED:
+                default:
+                    return null;
+            }
+        }
+    }
+}
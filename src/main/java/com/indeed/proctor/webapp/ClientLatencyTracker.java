@@ -0,0 +1,183 @@
+package com.indeed.proctor.webapp;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.webapp.model.ProctorClientApplication;
+import com.indeed.util.varexport.Export;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks an exponentially weighted moving average of the latency and failure rate of the specification
+ * requests sent to each client instance, told apart by base application URL, to try the instance that is
+ * most likely to answer quickly first.
+ *
+ * Also keeps a window of recent successful latencies, used to pick the delay after which a hedged
+ * request is sent to a second instance.
+ */
+class ClientLatencyTracker {
+    // weight of the newest sample
+    private static final double ALPHA = 0.3;
+    private static final int WINDOW_SIZE = 1024;
+    private static final long PERCENTILE_CACHE_MILLIS = 1000;
+
+    // a failure is assumed to cost the full timeout, whatever it took to fail
+    private final long failurePenalty;
+
+    private final Map<String, ClientStats> clients = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .<String, ClientStats>build()
+            .asMap();
+
+    private final long[] window = new long[WINDOW_SIZE];
+    private int windowCount = 0;
+    private int windowNext = 0;
+    private double cachedPercentile = -1;
+    private long cachedPercentileValue = -1;
+    private long cachedPercentileAt = 0;
+
+    private final AtomicLong hedges = new AtomicLong(0);
+    private final AtomicLong hedgeWins = new AtomicLong(0);
+
+    ClientLatencyTracker(final long failurePenalty) {
+        this.failurePenalty = failurePenalty;
+    }
+
+    void recordSuccess(final ProctorClientApplication client, final long millis) {
+        getStats(client).record(millis, false);
+        synchronized (window) {
+            window[windowNext] = millis;
+            windowNext = (windowNext + 1) % WINDOW_SIZE;
+            windowCount = Math.min(windowCount + 1, WINDOW_SIZE);
+        }
+    }
+
+    void recordFailure(final ProctorClientApplication client, final long millis) {
+        getStats(client).record(millis, true);
+    }
+
+    void recordHedge(final boolean won) {
+        hedges.incrementAndGet();
+        if (won) {
+            hedgeWins.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the clients ordered by expected cost: healthy fast instances first, unknown instances
+     * ranked by the average cost of the known ones, failing instances last
+     */
+    List<ProctorClientApplication> order(final List<ProctorClientApplication> candidates) {
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+        final double[] costs = new double[candidates.size()];
+        double knownCost = 0;
+        int known = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            final ClientStats stats = clients.get(key(candidates.get(i)));
+            costs[i] = stats != null ? stats.expectedCost(failurePenalty) : -1;
+            if (stats != null) {
+                knownCost += costs[i];
+                known++;
+            }
+        }
+        final double unknownCost = known > 0 ? knownCost / known : 0;
+
+        final List<Integer> indexes = Lists.newArrayListWithCapacity(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            if (costs[i] < 0) {
+                costs[i] = unknownCost;
+            }
+            indexes.add(i);
+        }
+        // stable sort: equally ranked clients keep the order of the client source
+        Collections.sort(indexes, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return Double.compare(costs[a], costs[b]);
+            }
+        });
+        final List<ProctorClientApplication> ordered = Lists.newArrayListWithCapacity(candidates.size());
+        for (final int index : indexes) {
+            ordered.add(candidates.get(index));
+        }
+        return ordered;
+    }
+
+    /**
+     * @return the given percentile of the recent successful latencies, -1 until enough requests completed
+     */
+    long getLatencyPercentile(final double percentile) {
+        Preconditions.checkArgument(percentile > 0 && percentile <= 100, "0 < percentile <= 100");
+        synchronized (window) {
+            final long now = System.currentTimeMillis();
+            if (percentile == cachedPercentile && now - cachedPercentileAt < PERCENTILE_CACHE_MILLIS) {
+                return cachedPercentileValue;
+            }
+            long value = -1;
+            // too few samples say nothing about the tail
+            if (windowCount >= 20) {
+                final long[] sorted = Arrays.copyOf(window, windowCount);
+                Arrays.sort(sorted);
+                value = sorted[Math.min(windowCount - 1, (int) Math.ceil(percentile / 100 * windowCount) - 1)];
+            }
+            cachedPercentile = percentile;
+            cachedPercentileValue = value;
+            cachedPercentileAt = now;
+            return value;
+        }
+    }
+
+    private ClientStats getStats(final ProctorClientApplication client) {
+        ClientStats stats = clients.get(key(client));
+        if (stats == null) {
+            final ClientStats created = new ClientStats();
+            stats = clients.putIfAbsent(key(client), created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private static String key(final ProctorClientApplication client) {
+        return client.getBaseApplicationUrl();
+    }
+
+    @Export(name = "tracked-clients", doc = "Number of client instances with latency statistics")
+    public int getTrackedClients() {
+        return clients.size();
+    }
+
+    @Export(name = "hedged-requests", doc = "Number of specification requests hedged to a second instance")
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    @Export(name = "hedged-request-wins", doc = "Number of hedged specification requests that answered before the original request")
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    private static class ClientStats {
+        private double latency = -1;
+        private double failureRate = 0;
+
+        synchronized void record(final long millis, final boolean failed) {
+            latency = latency < 0 ? millis : ALPHA * millis + (1 - ALPHA) * latency;
+            failureRate = ALPHA * (failed ? 1 : 0) + (1 - ALPHA) * failureRate;
+        }
+
+        synchronized double expectedCost(final long failurePenalty) {
+            return (1 - failureRate) * latency + failureRate * failurePenalty;
+        }
+    }
+}
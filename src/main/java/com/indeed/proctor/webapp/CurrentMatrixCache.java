@@ -0,0 +1,213 @@
+package com.indeed.proctor.webapp;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.ProctorUtils;
+import com.indeed.proctor.common.Serializers;
+import com.indeed.proctor.common.TestSpecification;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixArtifact;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.StoreException;
+import com.indeed.proctor.webapp.db.Environment;
+import com.indeed.proctor.webapp.model.TestMatrixSearchIndex;
+import com.indeed.proctor.webapp.views.SerializedJson;
+import com.indeed.util.varexport.Export;
+import com.indeed.util.varexport.VarExporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the current test matrix of each store with what the controllers derive from it (the consumable
+ * artifact, the specification of each test and the search index of the matrix list page), keyed by the latest
+ * version of the store.
+ *
+ * A lookup costs a getLatestVersion call; the matrix is only loaded and converted again once the store moved.
+ * A view is labelled with the version of the matrix it holds, and only kept when that version is the latest
+ * version read for the lookup, so the revision of a view always names its content.
+ */
+@Component
+public class CurrentMatrixCache {
+    private final Map<Environment, ProctorStore> stores;
+    private final Map<Environment, Object> locks;
+    private final ConcurrentMap<Environment, MatrixView> views = Maps.newConcurrentMap();
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong builds = new AtomicLong(0);
+    private final AtomicLong searchIndexBuilds = new AtomicLong(0);
+
+    @Autowired
+    public CurrentMatrixCache(@Qualifier("trunk") final ProctorStore trunkStore,
+                              @Qualifier("qa") final ProctorStore qaStore,
+                              @Qualifier("production") final ProctorStore productionStore) {
+        this.stores = ImmutableMap.of(
+                Environment.WORKING, trunkStore,
+                Environment.QA, qaStore,
+                Environment.PRODUCTION, productionStore);
+        this.locks = ImmutableMap.of(
+                Environment.WORKING, new Object(),
+                Environment.QA, new Object(),
+                Environment.PRODUCTION, new Object());
+        VarExporter.forNamespace(getClass().getSimpleName()).export(this, "");
+    }
+
+    public MatrixView get(final Environment environment) throws StoreException {
+        final ProctorStore store = stores.get(environment);
+        final String head = store.getLatestVersion();
+        final MatrixView cached = views.get(environment);
+        if (cached != null && cached.getRevision().equals(head)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        // one build per store revision, concurrent requests wait for it
+        synchronized (locks.get(environment)) {
+            final MatrixView current = views.get(environment);
+            if (current != null && current.getRevision().equals(head)) {
+                hits.incrementAndGet();
+                return current;
+            }
+            // labelled with the revision the matrix was read at: the store may have moved since head was read
+            final TestMatrixVersion testMatrixVersion = store.getCurrentTestMatrix();
+            final String revision = testMatrixVersion.getVersion();
+            if (current != null && current.getRevision().equals(revision)) {
+                hits.incrementAndGet();
+                return current;
+            }
+            final MatrixView view = new MatrixView(testMatrixVersion);
+            builds.incrementAndGet();
+            if (head.equals(revision)) {
+                // a thread that read an older head never replaces a view of a newer revision
+                views.put(environment, view);
+            }
+            return view;
+        }
+    }
+
+    /**
+     * @return the search index of the current matrix of the store, built once per store revision
+     */
+    public TestMatrixSearchIndex getSearchIndex(final Environment environment) throws StoreException {
+        final MatrixView view = get(environment);
+        synchronized (view) {
+            if (view.searchIndex == null) {
+                view.searchIndex = TestMatrixSearchIndex.build(view.getRevision(),
+                        view.getTestMatrixVersion().getTestMatrixDefinition(),
+                        stores.get(environment).getAllHistories());
+                searchIndexBuilds.incrementAndGet();
+            }
+            return view.searchIndex;
+        }
+    }
+
+    @Export(name = "hits", doc = "Number of current matrix lookups served without loading the matrix")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Export(name = "builds", doc = "Number of times a current matrix was loaded and converted because its store moved")
+    public long getBuilds() {
+        return builds.get();
+    }
+
+    @Export(name = "search-index-builds", doc = "Number of times the search index of a current matrix was built")
+    public long getSearchIndexBuilds() {
+        return searchIndexBuilds.get();
+    }
+
+    /**
+     * The current matrix of a store at a given revision and its derived views, shared by all requests: do not modify.
+     */
+    public static class MatrixView {
+        private final String revision;
+        private final TestMatrixVersion testMatrixVersion;
+        private final TestMatrixArtifact artifact;
+        private final ConcurrentMap<String, TestSpecification> specifications = Maps.newConcurrentMap();
+        // guarded by this, see CurrentMatrixCache.getSearchIndex
+        private TestMatrixSearchIndex searchIndex = null;
+        private volatile SerializedJson serializedArtifact = null;
+        private volatile SerializedJson serializedMatrix = null;
+
+        /**
+         * @param testMatrixVersion the view is labelled with its version, the revision of the store it was read at
+         */
+        public MatrixView(final TestMatrixVersion testMatrixVersion) {
+            this.revision = testMatrixVersion.getVersion();
+            this.testMatrixVersion = testMatrixVersion;
+            this.artifact = ProctorUtils.convertToConsumableArtifact(testMatrixVersion);
+        }
+
+        public String getRevision() {
+            return revision;
+        }
+
+        public TestMatrixVersion getTestMatrixVersion() {
+            return testMatrixVersion;
+        }
+
+        public TestMatrixArtifact getArtifact() {
+            return artifact;
+        }
+
+        /**
+         * @return the artifact serialized without indentation, with its gzip compression, built on first use. It is
+         * replaced with the view once the store moves, so clients never get the bytes of a previous revision.
+         */
+        public SerializedJson getSerializedArtifact() throws IOException {
+            SerializedJson serialized = serializedArtifact;
+            if (serialized == null) {
+                synchronized (this) {
+                    serialized = serializedArtifact;
+                    if (serialized == null) {
+                        serialized = new SerializedJson(Serializers.strict().writeValueAsBytes(artifact));
+                        serializedArtifact = serialized;
+                    }
+                }
+            }
+            return serialized;
+        }
+
+        /**
+         * @return the matrix serialized without indentation, with its gzip compression, built on first use and
+         * replaced with the view like {@link #getSerializedArtifact()}
+         */
+        public SerializedJson getSerializedMatrix() throws IOException {
+            SerializedJson serialized = serializedMatrix;
+            if (serialized == null) {
+                synchronized (this) {
+                    serialized = serializedMatrix;
+                    if (serialized == null) {
+                        serialized = new SerializedJson(Serializers.strict().writeValueAsBytes(testMatrixVersion));
+                        serializedMatrix = serialized;
+                    }
+                }
+            }
+            return serialized;
+        }
+
+        /**
+         * @return the specification generated from the definition of the test, null if the test is not in the matrix
+         * @throws IllegalArgumentException if no specification can be generated from the definition
+         */
+        // @Nullable
+        public TestSpecification getSpecification(final String testName) {
+            final TestSpecification cached = specifications.get(testName);
+            if (cached != null) {
+                return cached;
+            }
+            final TestDefinition definition = testMatrixVersion.getTestMatrixDefinition().getTests().get(testName);
+            if (definition == null) {
+                return null;
+            }
+            final TestSpecification specification = ProctorUtils.generateSpecification(definition);
+            specifications.putIfAbsent(testName, specification);
+            return specification;
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package com.indeed.proctor.webapp;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.indeed.proctor.common.ProctorSpecification;
 import com.indeed.proctor.common.Serializers;
@@ -18,13 +21,17 @@ import com.indeed.proctor.webapp.db.Environment;
 import com.indeed.proctor.webapp.model.AppVersion;
 import com.indeed.proctor.webapp.model.ProctorClientApplication;
 import com.indeed.proctor.webapp.model.RemoteSpecificationResult;
+import com.indeed.proctor.webapp.util.threads.FanOut;
 import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
 import com.indeed.util.core.DataLoadingTimerTask;
 import com.indeed.util.core.Pair;
+import com.indeed.util.varexport.Export;
+import com.indeed.util.varexport.VarExporter;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import javax.annotation.Nullable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
@@ -34,25 +41,37 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author parker
  */
-public class RemoteProctorSpecificationSource extends DataLoadingTimerTask implements ProctorSpecificationSource {
+public class RemoteProctorSpecificationSource extends DataLoadingTimerTask implements ProctorSpecificationSource, InitializingBean {
     private static final Logger LOGGER = Logger.getLogger(RemoteProctorSpecificationSource.class);
 
     private static final ObjectMapper OBJECT_MAPPER = Serializers.strict();
+    private static final SpecificationParser SPECIFICATION_PARSER = new SpecificationParser(OBJECT_MAPPER);
+
+    private static final long DEFAULT_REFRESH_DEADLINE = TimeUnit.MINUTES.toMillis(5);
 
     @Autowired(required=false)
     private ProctorClientSource clientSource = new DefaultClientSource();
@@ -60,121 +79,382 @@ public class RemoteProctorSpecificationSource extends DataLoadingTimerTask imple
     private final int httpTimeout;
     private final ExecutorService httpExecutor;
 
-    private volatile Map<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>> cache_ = Maps.newConcurrentMap();
+    // One thread per environment; each one fans its fetches out over the shared httpExecutor
+    private final ExecutorService refreshExecutor;
+    // Bounds the number of in-flight fetches per environment so that one large environment cannot starve the others
+    private final int refreshConcurrency;
+    private final long refreshDeadline;
+
+    private final RefreshStats refreshStats = new RefreshStats();
+
+    // Parse specifications with SpecificationParser, keeping only what is needed and sharing test and bucket names
+    private boolean streamingParse = true;
+
+    // Send If-None-Match / If-Modified-Since and reuse the parsed specification when it did not change
+    private boolean conditionalFetch = true;
+    private final Map<Environment, SpecificationFetchCache> fetchCaches = new EnumMap<Environment, SpecificationFetchCache>(Environment.class);
+
+    // Try the instances of an AppVersion fastest first, optionally hedging slow requests to a second instance
+    private boolean clientOrdering = true;
+    // percentile of recent latencies after which a second instance is asked, 0 to disable hedging
+    private double hedgePercentile = 0;
+    private final ClientLatencyTracker latencyTracker;
+    // Stops asking instances that keep failing, so that a refresh only waits for healthy ones
+    private final ClientCircuitBreaker circuitBreaker = new ClientCircuitBreaker();
+    // hedged requests run here so that the httpExecutor thread waiting for them cannot starve them
+    private final ExecutorService hedgeExecutor;
+
+    // Only probe new AppVersions and re-validate known ones every revalidateInterval ms
+    private boolean incrementalRefresh = false;
+    private long revalidateInterval = TimeUnit.HOURS.toMillis(1);
+    // when the cached result of each AppVersion was last fetched, only touched by the refresh of its environment
+    private final Map<Environment, Map<AppVersion, Long>> validated = new EnumMap<Environment, Map<AppVersion, Long>>(Environment.class);
+
+    // @Nullable - last loaded specifications, served after a restart until the first refresh completes
+    private SpecificationSnapshot snapshot;
+    // last results of each environment that refreshed successfully, or were read from the snapshot, only touched by load
+    private final Map<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>> snapshotted = new EnumMap<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>>(Environment.class);
+
+    // results and the lookups derived from them are swapped in together, one SpecificationIndex per environment
+    private final Map<Environment, SpecificationIndex> cache_ = Maps.newConcurrentMap();
+    // results of the last poll (or snapshot) of each environment, merged with the live registrations into cache_
+    private final Map<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>> polled = Maps.newConcurrentMap();
+    // specifications pushed by client applications, live for registrationTtl ms after their last push
+    private final Map<Environment, Map<AppVersion, Registration>> registrations = new EnumMap<Environment, Map<AppVersion, Registration>>(Environment.class);
+    private long registrationTtl = TimeUnit.MINUTES.toMillis(30);
+    // when the first registration merged into the index of each environment expires, see getIndex
+    private final Map<Environment, Long> indexExpiresAt = Maps.newConcurrentMap();
 
     public RemoteProctorSpecificationSource(int httpTimeout,
                                             int executorThreads) {
+        this(httpTimeout, executorThreads, executorThreads, DEFAULT_REFRESH_DEADLINE);
+    }
+
+    /**
+     * @param httpTimeout connect and read timeout in milliseconds for each specification request
+     * @param executorThreads number of threads shared by all environments to fetch specifications
+     * @param refreshConcurrency maximum number of in-flight specification requests per environment
+     * @param refreshDeadline maximum time in milliseconds a refresh of all environments may take
+     */
+    public RemoteProctorSpecificationSource(int httpTimeout,
+                                            int executorThreads,
+                                            int refreshConcurrency,
+                                            long refreshDeadline) {
         super(RemoteProctorSpecificationSource.class.getSimpleName());
         this.httpTimeout = httpTimeout;
+        this.refreshConcurrency = refreshConcurrency;
+        this.refreshDeadline = refreshDeadline;
         Preconditions.checkArgument(httpTimeout > 0, "verificationTimeout > 0");
+        Preconditions.checkArgument(refreshConcurrency > 0, "refreshConcurrency > 0");
+        Preconditions.checkArgument(refreshDeadline > 0, "refreshDeadline > 0");
         final ThreadFactory threadFactory = new ThreadFactoryBuilder()
                 .setNameFormat("proctor-specification-source-Thread-%d")
                 .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
                 .build();
         this.httpExecutor = Executors.newFixedThreadPool(executorThreads, threadFactory);
+        final ThreadFactory refreshThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("proctor-specification-refresh-Thread-%d")
+                .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                .build();
+        this.refreshExecutor = Executors.newFixedThreadPool(Environment.values().length, refreshThreadFactory);
+        // bounded by the refresh concurrency: at most two requests per in-flight AppVersion
+        this.hedgeExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("proctor-specification-hedge-Thread-%d")
+                .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                .build());
+        this.latencyTracker = new ClientLatencyTracker(httpTimeout);
+        final VarExporter exporter = VarExporter.forNamespace(getClass().getSimpleName());
+        exporter.export(refreshStats, "");
+        exporter.export(latencyTracker, "client-");
+        exporter.export(circuitBreaker, "circuit-breaker-");
+        for (final Environment environment : Environment.values()) {
+            final SpecificationFetchCache fetchCache = new SpecificationFetchCache();
+            fetchCaches.put(environment, fetchCache);
+            validated.put(environment, Maps.<AppVersion, Long>newConcurrentMap());
+            registrations.put(environment, Maps.<AppVersion, Registration>newConcurrentMap());
+            exporter.export(fetchCache, "conditional-fetch-" + environment.getName() + "-");
+        }
+    }
+
+    public void setStreamingParse(final boolean streamingParse) {
+        this.streamingParse = streamingParse;
+    }
+
+    public void setConditionalFetch(final boolean conditionalFetch) {
+        this.conditionalFetch = conditionalFetch;
+    }
+
+    public void setClientOrdering(final boolean clientOrdering) {
+        this.clientOrdering = clientOrdering;
+    }
+
+    /**
+     * @param hedgePercentile percentile of recent specification request latencies after which the next instance of an AppVersion is asked as well, 0 to disable hedging
+     */
+    public void setHedgePercentile(final double hedgePercentile) {
+        Preconditions.checkArgument(hedgePercentile >= 0 && hedgePercentile <= 100, "0 <= hedgePercentile <= 100");
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * @param circuitBreakerFailures consecutive failures after which an instance is not asked again until its backoff expires, 0 to disable
+     */
+    public void setCircuitBreakerFailures(final int circuitBreakerFailures) {
+        circuitBreaker.setFailureThreshold(circuitBreakerFailures);
+    }
+
+    /**
+     * @param circuitBreakerBackoff initial backoff in milliseconds of an open circuit breaker, doubled every time its probe fails
+     */
+    public void setCircuitBreakerBackoff(final long circuitBreakerBackoff) {
+        circuitBreaker.setBackoff(circuitBreakerBackoff);
+    }
+
+    public void setCircuitBreakerMaxBackoff(final long circuitBreakerMaxBackoff) {
+        circuitBreaker.setMaxBackoff(circuitBreakerMaxBackoff);
+    }
+
+    public void setIncrementalRefresh(final boolean incrementalRefresh) {
+        this.incrementalRefresh = incrementalRefresh;
+    }
+
+    /**
+     * @param revalidateInterval minimum time in milliseconds before an AppVersion that was loaded is fetched again in incremental mode
+     */
+    public void setRevalidateInterval(final long revalidateInterval) {
+        Preconditions.checkArgument(revalidateInterval >= 0, "revalidateInterval >= 0");
+        this.revalidateInterval = revalidateInterval;
+    }
+
+    /**
+     * @param registrationTtl time in milliseconds a pushed specification is served without being pushed again
+     */
+    public void setRegistrationTtl(final long registrationTtl) {
+        Preconditions.checkArgument(registrationTtl > 0, "registrationTtl > 0");
+        this.registrationTtl = registrationTtl;
+    }
+
+    /**
+     * @param snapshotFile file to persist the loaded specifications to, empty to disable snapshots
+     */
+    public void setSnapshotFile(final String snapshotFile) {
+        this.snapshot = Strings.isNullOrEmpty(snapshotFile) ? null : new SpecificationSnapshot(new File(snapshotFile));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (snapshot != null) {
+            loadSnapshot();
+        }
+    }
+
+    private void loadSnapshot() {
+        final long start = System.currentTimeMillis();
+        final Map<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>> specifications;
+        try {
+            specifications = snapshot.read();
+        } catch (final IOException e) {
+            LOGGER.error("Unable to read specification snapshot " + snapshot.getFile() + ", waiting for the first refresh", e);
+            return;
+        } catch (final RuntimeException e) {
+            LOGGER.error("Unable to read specification snapshot " + snapshot.getFile() + ", waiting for the first refresh", e);
+            return;
+        }
+        final long written = snapshot.lastModified();
+        snapshotted.putAll(specifications);
+        synchronized (cache_) {
+            for (final Map.Entry<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>> entry : specifications.entrySet()) {
+                // never replace results of a refresh that already completed
+                if (!polled.containsKey(entry.getKey())) {
+                    polled.put(entry.getKey(), entry.getValue());
+                    updateIndex(entry.getKey());
+                    refreshStats.recordUpdate(entry.getKey(), written, true);
+                }
+            }
+        }
+        LOGGER.info("Loaded specification snapshot " + snapshot.getFile() + " from " + new Date(written) + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Persists the polled results of the environments that refreshed successfully, keeping the last good results of the others
+     */
+    private void writeSnapshot(final Set<Environment> refreshed) {
+        // pushed specifications are not persisted, they are only served while their registration lives
+        for (final Environment environment : refreshed) {
+            snapshotted.put(environment, polled.get(environment));
+        }
+        try {
+            snapshot.write(snapshotted);
+        } catch (final IOException e) {
+            LOGGER.error("Unable to write specification snapshot " + snapshot.getFile(), e);
+        }
+    }
+
+    /**
+     * Registers the specification pushed by a client application. It is served for its AppVersion
+     * until registrationTtl expires, in place of polling that AppVersion.
+     *
+     * @param body the SpecificationResult json, as served on /private/proctor/specification
+     */
+    public RemoteSpecificationResult register(final Environment environment,
+                                              final ProctorClientApplication client,
+                                              final byte[] body) throws IOException {
+        final SpecificationResult specificationResult = streamingParse ? SPECIFICATION_PARSER.parse(body) : OBJECT_MAPPER.readValue(body, SpecificationResult.class);
+        if (specificationResult.getSpecification() == null) {
+            throw new IllegalArgumentException("No specification provided for " + client + (specificationResult.getError() != null ? ": " + specificationResult.getError() : ""));
+        }
+        final AppVersion version = new AppVersion(client.getApplication(), client.getVersion());
+        final RemoteSpecificationResult result = RemoteSpecificationResult.newBuilder(version)
+                .success(client, specificationResult)
+                .build(Collections.<ProctorClientApplication>emptyList());
+        registrations.get(environment).put(version, new Registration(result, System.currentTimeMillis() + registrationTtl));
+        updateIndex(environment);
+        refreshStats.recordRegistration();
+        LOGGER.info("Registered specification of " + version + " in " + environment + " pushed by " + client.getBaseApplicationUrl());
+        return result;
+    }
+
+    // @Nullable
+    private RemoteSpecificationResult getRegistered(final Environment environment, final AppVersion version) {
+        final Registration registration = registrations.get(environment).get(version);
+        return registration != null && !registration.isExpired(System.currentTimeMillis()) ? registration.result : null;
+    }
+
+    /**
+     * Rebuilds the index of an environment from its polled results and live registrations, dropping expired registrations
+     */
+    private void updateIndex(final Environment environment) {
+        synchronized (cache_) {
+            final Map<AppVersion, RemoteSpecificationResult> merged = Maps.newLinkedHashMap();
+            final ImmutableMap<AppVersion, RemoteSpecificationResult> polledResults = polled.get(environment);
+            if (polledResults != null) {
+                merged.putAll(polledResults);
+            }
+            final long now = System.currentTimeMillis();
+            long expiresAt = Long.MAX_VALUE;
+            for (final Iterator<Registration> iterator = registrations.get(environment).values().iterator(); iterator.hasNext(); ) {
+                final Registration registration = iterator.next();
+                if (registration.isExpired(now)) {
+                    iterator.remove();
+                } else {
+                    merged.put(registration.result.getVersion(), registration.result);
+                    expiresAt = Math.min(expiresAt, registration.expiresAt);
+                }
+            }
+            cache_.put(environment, new SpecificationIndex(ImmutableMap.copyOf(merged)));
+            indexExpiresAt.put(environment, expiresAt);
+        }
     }
 
     @Override
     public RemoteSpecificationResult getRemoteResult(final Environment environment,
                                         final AppVersion version) {
-        final ImmutableMap<AppVersion, RemoteSpecificationResult> results = cache_.get(environment);
-        if(results != null && results.containsKey(version)) {
-            return results.get(version);
+        final RemoteSpecificationResult result = getIndex(environment).getResults().get(version);
+        if(result != null) {
+            return result;
         }
         return RemoteSpecificationResult.newBuilder(version).build(Collections.<ProctorClientApplication>emptyList());
     }
 
     @Override
     public Map<AppVersion, RemoteSpecificationResult> loadAllSpecifications(Environment environment) {
-        final ImmutableMap<AppVersion, RemoteSpecificationResult> cache = cache_.get(environment);
-        if(cache == null) {
-            return Collections.emptyMap();
-        } else {
-            return cache;
-        }
+        return getIndex(environment).getResults();
     }
 
     @Override
     public Map<AppVersion, ProctorSpecification> loadAllSuccessfulSpecifications(Environment environment) {
-        final ImmutableMap<AppVersion, RemoteSpecificationResult> cache = cache_.get(environment);
-        if(cache == null) {
-            return Collections.emptyMap();
-        } else {
-            final Map<AppVersion, RemoteSpecificationResult> success =  Maps.filterEntries(cache, new Predicate<Map.Entry<AppVersion, RemoteSpecificationResult>>() {
-                @Override
-                public boolean apply(@Nullable Map.Entry<AppVersion, RemoteSpecificationResult> input) {
-                    return input.getValue().isSuccess();
-                }
-            });
-            return Maps.transformValues(success, new Function<RemoteSpecificationResult, ProctorSpecification>() {
-                @Override
-                public ProctorSpecification apply(@Nullable RemoteSpecificationResult input) {
-                    return input.getSpecificationResult().getSpecification();
-                }
-            });
-        }
+        return getIndex(environment).getSuccessfulSpecifications();
     }
 
 
     @Override
     public Set<AppVersion> activeClients(final Environment environment, final String testName) {
-        final Map<AppVersion, RemoteSpecificationResult> specifications = cache_.get(environment);
-        if(specifications == null) {
-            return Collections.emptySet();
-        }
-        final Set<AppVersion> clients = Sets.newHashSet();
-        for(Map.Entry<AppVersion, RemoteSpecificationResult> entry : specifications.entrySet()) {
-            final AppVersion version = entry.getKey();
-            final RemoteSpecificationResult rr = entry.getValue();
-            if(rr.isSuccess()) {
-                final ProctorSpecification specification = rr.getSpecificationResult().getSpecification();
-                if(containsTest(specification, testName)) {
-                    clients.add(version);
-                }
-            }
-        }
-        return clients;
+        return getIndex(environment).getClients(testName);
     }
 
     @Override
     public Set<String> activeTests(final Environment environment) {
-        final Map<AppVersion, RemoteSpecificationResult> specifications = cache_.get(environment);
-        if(specifications == null) {
-            return Collections.emptySet();
-        }
-        final Set<String> tests = Sets.newHashSet();
-        for(Map.Entry<AppVersion, RemoteSpecificationResult> entry : specifications.entrySet()) {
-            final RemoteSpecificationResult remoteResult = entry.getValue();
-            if(remoteResult.isSuccess()) {
-                tests.addAll(remoteResult.getSpecificationResult().getSpecification().getTests().keySet());
+        return getIndex(environment).getActiveTests();
+    }
+
+    private SpecificationIndex getIndex(final Environment environment) {
+        final Long expiresAt = indexExpiresAt.get(environment);
+        if (expiresAt != null && expiresAt <= System.currentTimeMillis()) {
+            // a pushed specification expired since the index was built, it must not be served until the next refresh
+            synchronized (cache_) {
+                if (indexExpiresAt.get(environment) <= System.currentTimeMillis()) {
+                    updateIndex(environment);
+                }
             }
         }
-        return tests;
+        final SpecificationIndex index = cache_.get(environment);
+        return index != null ? index : SpecificationIndex.EMPTY;
     }
 
     @Override
     public boolean load() {
-        final boolean success = refreshInternalCache();
+        final Set<Environment> refreshed = refreshInternalCache();
+        final boolean success = refreshed.size() == Environment.values().length;
         if(success) {
             setDataVersion(new Date().toString());
         }
+        if (snapshot != null && !refreshed.isEmpty()) {
+            writeSnapshot(refreshed);
+        }
         return success;
     }
 
-    private boolean refreshInternalCache() {
-        // TODO (parker) 9/6/12 - run all of these in parallel instead of in series
-        boolean devSuccess = refreshInternalCache(Environment.WORKING);
-        boolean qaSuccess = refreshInternalCache(Environment.QA);
-        boolean productionSuccess = refreshInternalCache(Environment.PRODUCTION);
-        return devSuccess && qaSuccess && productionSuccess;
+    /**
+     * @return the environments whose specifications were all loaded
+     */
+    private Set<Environment> refreshInternalCache() {
+        final long deadline = System.currentTimeMillis() + refreshDeadline;
+        final Map<Environment, Future<Boolean>> futures = new EnumMap<Environment, Future<Boolean>>(Environment.class);
+        for (final Environment environment : Environment.values()) {
+            futures.put(environment, refreshExecutor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    final long start = System.currentTimeMillis();
+                    try {
+                        return refreshInternalCache(environment, deadline);
+                    } finally {
+                        refreshStats.recordLatency(environment, System.currentTimeMillis() - start);
+                    }
+                }
+            }));
+        }
+
+        final Set<Environment> refreshed = EnumSet.noneOf(Environment.class);
+        for (final Map.Entry<Environment, Future<Boolean>> entry : futures.entrySet()) {
+            final Environment environment = entry.getKey();
+            final Future<Boolean> future = entry.getValue();
+            try {
+                final long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (future.get(remaining, TimeUnit.MILLISECONDS)) {
+                    refreshed.add(environment);
+                }
+            } catch (final TimeoutException e) {
+                LOGGER.error("Timed out refreshing specifications for " + environment + " after " + refreshDeadline + " ms, keeping previous results");
+                future.cancel(true);
+                refreshStats.recordTimeout(environment);
+            } catch (final InterruptedException e) {
+                LOGGER.error("Interrupted refreshing specifications for " + environment, e);
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                LOGGER.error("Unable to refresh specifications for " + environment, e.getCause());
+            }
+        }
+        return refreshed;
     }
 
-    private boolean refreshInternalCache(Environment environment) {
-        LOGGER.info("Refreshing internal list of ProctorSpecifications");
+    private boolean refreshInternalCache(final Environment environment, final long deadline) throws InterruptedException {
+        LOGGER.info("Refreshing internal list of ProctorSpecifications for " + environment);
 
         final List<ProctorClientApplication> clients = clientSource.loadClients(environment);
 
-        final Map<AppVersion, Future<RemoteSpecificationResult>> futures = Maps.newLinkedHashMap();
+        final SpecificationFetchCache fetchCache = conditionalFetch ? fetchCaches.get(environment) : null;
+        final FanOut<AppVersion, RemoteSpecificationResult> fanOut = new FanOut<AppVersion, RemoteSpecificationResult>(httpExecutor);
 
         final ImmutableMap.Builder<AppVersion, RemoteSpecificationResult> allResults = ImmutableMap.builder();
         final Set<AppVersion> appVersionsToCheck = Sets.newLinkedHashSet();
@@ -189,53 +469,93 @@ public class RemoteProctorSpecificationSource extends DataLoadingTimerTask imple
         }
         final ImmutableListMultimap<AppVersion, ProctorClientApplication> apps = builder.build();
 
+        final Map<AppVersion, RemoteSpecificationResult> previousResults = getIndex(environment).getResults();
+        final Map<AppVersion, Long> validatedAt = validated.get(environment);
+        // vanished AppVersions are dropped simply by not carrying them over
+        validatedAt.keySet().retainAll(apps.keySet());
+        final long revalidateBefore = System.currentTimeMillis() - revalidateInterval;
+        int reused = 0;
 
+        // Permits of fetches cancelled before they start are never released, so use a fresh semaphore per refresh
+        final Semaphore permits = new Semaphore(refreshConcurrency);
         for(final AppVersion appVersion : apps.keySet()) {
+            if (getRegistered(environment, appVersion) != null) {
+                // pushed by the client itself, no need to ask. It is merged into the index while it lives,
+                // and not kept with the polled results so that it is not served once it expired.
+                reused++;
+                continue;
+            }
+            if (incrementalRefresh) {
+                final RemoteSpecificationResult previous = previousResults.get(appVersion);
+                final Long lastFetched = validatedAt.get(appVersion);
+                if (previous != null && lastFetched != null && lastFetched > revalidateBefore) {
+                    allResults.put(appVersion, previous);
+                    if (previous.isSkipped()) {
+                        skippedAppVersions.add(appVersion);
+                    }
+                    reused++;
+                    continue;
+                }
+            }
             appVersionsToCheck.add(appVersion);
             final List<ProctorClientApplication> callableClients = apps.get(appVersion);
             assert callableClients.size() > 0;
-            futures.put(appVersion, httpExecutor.submit(new Callable<RemoteSpecificationResult>() {
+            if (!permits.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                // fetches still pending at the deadline are cancelled below
+                break;
+            }
+            fanOut.submit(appVersion, new Callable<RemoteSpecificationResult>() {
                 @Override
                 public RemoteSpecificationResult call() throws Exception {
-                    return internalGet(appVersion, callableClients, httpTimeout);
-                }
-            }));
-
-        }
-        while (!futures.isEmpty()) {
-            try {
-                Thread.sleep(10);
-            } catch (final InterruptedException e) {
-                LOGGER.error("Oh heavens", e);
-            }
-            for (final Iterator<Map.Entry<AppVersion, Future<RemoteSpecificationResult>>> iterator = futures.entrySet().iterator(); iterator.hasNext();) {
-                final Map.Entry<AppVersion, Future<RemoteSpecificationResult>> entry = iterator.next();
-                final AppVersion appVersion = entry.getKey();
-                final Future<RemoteSpecificationResult> future = entry.getValue();
-                if (future.isDone()) {
-                    iterator.remove();
                     try {
-                        final RemoteSpecificationResult result = future.get();
-                        allResults.put(appVersion, result);
-                        if (result.isSkipped()) {
-                            skippedAppVersions.add(result.getVersion());
-                            appVersionsToCheck.remove(result.getVersion());
-                        } else if (result.isSuccess()) {
-                            appVersionsToCheck.remove(result.getVersion());
-                        }
-                    } catch (final InterruptedException e) {
-                        LOGGER.error("Interrupted getting " + appVersion, e);
-                    } catch (final ExecutionException e) {
-                        final Throwable cause = e.getCause();
-                        LOGGER.error("Unable to fetch " + appVersion, cause);
+                        return internalGet(appVersion, callableClients, fetchCache);
+                    } finally {
+                        permits.release();
                     }
                 }
+            });
+        }
+
+        // Each fetch already bounds itself with httpTimeout per client, the refresh deadline bounds them all
+        final long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        fanOut.results(refreshDeadline, remaining, TimeUnit.MILLISECONDS).forEach(result -> {
+            final AppVersion appVersion = result.getKey();
+            switch (result.getStatus()) {
+                case SUCCESS:
+                    final RemoteSpecificationResult remoteResult = result.getValue();
+                    allResults.put(appVersion, remoteResult);
+                    if (remoteResult.isSkipped()) {
+                        skippedAppVersions.add(remoteResult.getVersion());
+                        appVersionsToCheck.remove(remoteResult.getVersion());
+                        validatedAt.put(appVersion, System.currentTimeMillis());
+                    } else if (remoteResult.isSuccess()) {
+                        appVersionsToCheck.remove(remoteResult.getVersion());
+                        validatedAt.put(appVersion, System.currentTimeMillis());
+                    }
+                    break;
+                case FAILED:
+                    LOGGER.error("Unable to fetch " + appVersion, result.getError());
+                    break;
+                case TIMED_OUT:
+                    LOGGER.error("Timed out fetching " + appVersion);
+                    break;
+                case CANCELLED:
+                    LOGGER.error("Cancelled fetching " + appVersion);
+                    break;
             }
+        });
+        if (Thread.currentThread().isInterrupted()) {
+            // the refresh of this environment was cancelled, keep the previous results
+            throw new InterruptedException("Cancelled refreshing specifications for " + environment);
         }
 
         synchronized (cache_) {
-            cache_.put(environment, allResults.build());
+            polled.put(environment, allResults.build());
+            updateIndex(environment);
+            refreshStats.recordUpdate(environment, System.currentTimeMillis(), false);
         }
+        refreshStats.recordProbes(apps.keySet().size() - reused, reused);
+        fetchCaches.get(environment).retain(apps.keySet());
 
         // TODO (parker) 9/6/12 - Fail if we do not have 1 specification for each <Application>.<Version>
         // should we update the cache?
@@ -251,54 +571,194 @@ public class RemoteProctorSpecificationSource extends DataLoadingTimerTask imple
     }
 
     public void shutdown() {
+        refreshExecutor.shutdownNow();
         httpExecutor.shutdownNow();
+        hedgeExecutor.shutdownNow();
     }
 
-    private static RemoteSpecificationResult internalGet(final AppVersion version, final List<ProctorClientApplication> clients, final int timeout) {
-        // TODO (parker) 2/7/13 - priority queue them based on AUS datacenter, US DC, etc
-        final LinkedList<ProctorClientApplication> remaining = Lists.newLinkedList(clients);
+    private RemoteSpecificationResult internalGet(final AppVersion version,
+                                                  final List<ProctorClientApplication> clients,
+                                                  /* @Nullable */ final SpecificationFetchCache fetchCache) throws InterruptedException {
+        final LinkedList<ProctorClientApplication> remaining = Lists.newLinkedList(clientOrdering ? latencyTracker.order(clients) : clients);
+        final long hedgeDelay = hedgePercentile > 0 && remaining.size() > 1 ? latencyTracker.getLatencyPercentile(hedgePercentile) : -1;
+        if (hedgeDelay >= 0) {
+            return hedgedGet(version, remaining, fetchCache, hedgeDelay);
+        }
 
         final RemoteSpecificationResult.Builder results = RemoteSpecificationResult.newBuilder(version);
         while(remaining.peek() != null) {
             final ProctorClientApplication client = remaining.poll();
             // really stupid method of pinging 1 of the applications.
-            final Pair<Integer, SpecificationResult> result = internalGet(client, timeout);
-            final int statusCode = result.getFirst();
-            final SpecificationResult specificationResult = result.getSecond();
-            if(specificationResult.getSpecification() == null) {
-                if (statusCode == HttpURLConnection.HTTP_NOT_FOUND) {
-                    LOGGER.info("Client " + client.getBaseApplicationUrl() + " /private/proctor/specification returned 404 - skipping");
-                    results.skipped(client, specificationResult);
+            final Pair<Integer, SpecificationResult> result = timedGet(client, version, fetchCache);
+            if (addResult(results, client, result)) {
+                break;
+            }
+        }
+        return results.build(remaining);
+    }
+
+    /**
+     * Same as trying the clients one after the other, but when the current request takes longer than
+     * hedgeDelay a second request is sent to the next client and the first useful answer wins.
+     */
+    private RemoteSpecificationResult hedgedGet(final AppVersion version,
+                                                final LinkedList<ProctorClientApplication> remaining,
+                                                /* @Nullable */ final SpecificationFetchCache fetchCache,
+                                                final long hedgeDelay) throws InterruptedException {
+        final RemoteSpecificationResult.Builder results = RemoteSpecificationResult.newBuilder(version);
+        final CompletionService<Pair<Integer, SpecificationResult>> completionService = new ExecutorCompletionService<Pair<Integer, SpecificationResult>>(hedgeExecutor);
+        final Map<Future<Pair<Integer, SpecificationResult>>, ProctorClientApplication> inFlight = Maps.newHashMap();
+        Future<Pair<Integer, SpecificationResult>> hedge = null;
+        try {
+            submitGet(completionService, inFlight, remaining.poll(), version, fetchCache);
+            while (!inFlight.isEmpty()) {
+                final Future<Pair<Integer, SpecificationResult>> future;
+                if (hedge == null && inFlight.size() == 1 && !remaining.isEmpty()) {
+                    future = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                    if (future == null) {
+                        hedge = submitGet(completionService, inFlight, remaining.poll(), version, fetchCache);
+                        continue;
+                    }
+                } else {
+                    future = completionService.take();
+                }
+                final ProctorClientApplication client = inFlight.remove(future);
+                if (addResult(results, client, Futures.getUnchecked(future))) {
+                    if (hedge != null) {
+                        latencyTracker.recordHedge(future == hedge);
+                    }
                     break;
                 }
-
-                // Don't yell too load, the error is handled
-                LOGGER.info("Failed to read specification from: " + client.getBaseApplicationUrl() + " : " + specificationResult.getError());
-                results.failed(client, specificationResult);
-            } else {
-                results.success(client, specificationResult);
-                break;
+                if (!remaining.isEmpty()) {
+                    submitGet(completionService, inFlight, remaining.poll(), version, fetchCache);
+                }
+            }
+        } finally {
+            // the losing request is abandoned, its client is reported as not checked
+            for (final Map.Entry<Future<Pair<Integer, SpecificationResult>>, ProctorClientApplication> entry : inFlight.entrySet()) {
+                entry.getKey().cancel(true);
+                remaining.addFirst(entry.getValue());
             }
         }
         return results.build(remaining);
     }
 
+    private Future<Pair<Integer, SpecificationResult>> submitGet(final CompletionService<Pair<Integer, SpecificationResult>> completionService,
+                                                                 final Map<Future<Pair<Integer, SpecificationResult>>, ProctorClientApplication> inFlight,
+                                                                 final ProctorClientApplication client,
+                                                                 final AppVersion version,
+                                                                 /* @Nullable */ final SpecificationFetchCache fetchCache) {
+        final Future<Pair<Integer, SpecificationResult>> future = completionService.submit(new Callable<Pair<Integer, SpecificationResult>>() {
+            @Override
+            public Pair<Integer, SpecificationResult> call() {
+                return timedGet(client, version, fetchCache);
+            }
+        });
+        inFlight.put(future, client);
+        return future;
+    }
+
+    /**
+     * @return true if the client answered for its AppVersion, either with a specification or with 404
+     */
+    private static boolean addResult(final RemoteSpecificationResult.Builder results,
+                                     final ProctorClientApplication client,
+                                     final Pair<Integer, SpecificationResult> result) {
+        final int statusCode = result.getFirst();
+        final SpecificationResult specificationResult = result.getSecond();
+        if(specificationResult.getSpecification() == null) {
+            if (statusCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                LOGGER.info("Client " + client.getBaseApplicationUrl() + " /private/proctor/specification returned 404 - skipping");
+                results.skipped(client, specificationResult);
+                return true;
+            }
+
+            // Don't yell too load, the error is handled
+            LOGGER.info("Failed to read specification from: " + client.getBaseApplicationUrl() + " : " + specificationResult.getError());
+            results.failed(client, specificationResult);
+            return false;
+        } else {
+            results.success(client, specificationResult);
+            return true;
+        }
+    }
+
+    private Pair<Integer, SpecificationResult> timedGet(final ProctorClientApplication client,
+                                                        final AppVersion version,
+                                                        /* @Nullable */ final SpecificationFetchCache fetchCache) {
+        final String rejection = circuitBreaker.tryAcquire(client);
+        if (rejection != null) {
+            final SpecificationResult result = new SpecificationResult();
+            result.setError("Not requesting specification from " + client.getBaseApplicationUrl() + ": " + rejection);
+            return new Pair<Integer, SpecificationResult>(-1, result);
+        }
+
+        final long start = System.currentTimeMillis();
+        final Pair<Integer, SpecificationResult> result = internalGet(client, version, fetchCache);
+        final long elapsed = System.currentTimeMillis() - start;
+        if (result.getSecond().getSpecification() != null || result.getFirst() == HttpURLConnection.HTTP_NOT_FOUND) {
+            latencyTracker.recordSuccess(client, elapsed);
+            circuitBreaker.recordSuccess(client);
+        } else {
+            latencyTracker.recordFailure(client, elapsed);
+            final ClientCircuitBreaker.State state = circuitBreaker.recordFailure(client);
+            if (state != ClientCircuitBreaker.State.CLOSED) {
+                final SpecificationResult specificationResult = result.getSecond();
+                specificationResult.setError(specificationResult.getError() + " (circuit breaker " + state + ")");
+            }
+        }
+        return result;
+    }
+
     // @Nonnull
-    private static Pair<Integer, SpecificationResult> internalGet(final ProctorClientApplication client, final int timeout) {
+    private Pair<Integer, SpecificationResult> internalGet(final ProctorClientApplication client,
+                                                           final AppVersion version,
+                                                           /* @Nullable */ final SpecificationFetchCache fetchCache) {
         URL url = null;
         int statusCode = -1;
         InputStream inputStream = null;
         try {
             url = getSpecificationUrl(client);
-            LOGGER.info("Trying to read specification for " + client.getApplication() + " from " + url.toString() + " using timeout " + timeout + " ms");
+            LOGGER.info("Trying to read specification for " + client.getApplication() + " from " + url.toString() + " using timeout " + httpTimeout + " ms");
             final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(timeout);
-            urlConnection.setConnectTimeout(timeout);
+            urlConnection.setReadTimeout(httpTimeout);
+            urlConnection.setConnectTimeout(httpTimeout);
+
+            final SpecificationFetchCache.Entry cached = fetchCache != null ? fetchCache.get(version) : null;
+            if (cached != null) {
+                if (cached.getEtag() != null) {
+                    urlConnection.setRequestProperty("If-None-Match", cached.getEtag());
+                }
+                if (cached.getLastModified() > 0) {
+                    urlConnection.setIfModifiedSince(cached.getLastModified());
+                }
+            }
 
             statusCode = urlConnection.getResponseCode();
+            if (cached != null && statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                fetchCache.recordNotModified(cached);
+                return new Pair<Integer, SpecificationResult>(statusCode, cached.getResult());
+            }
             inputStream = urlConnection.getInputStream();
-            //  map from testName => list of bucket names
-            final SpecificationResult result = OBJECT_MAPPER.readValue(inputStream, SpecificationResult.class);
+            if (fetchCache == null) {
+                //  map from testName => list of bucket names
+                final SpecificationResult result = streamingParse ? SPECIFICATION_PARSER.parse(inputStream) : OBJECT_MAPPER.readValue(inputStream, SpecificationResult.class);
+                return new Pair<Integer, SpecificationResult>(statusCode, result);
+            }
+
+            final byte[] body = ByteStreams.toByteArray(inputStream);
+            final HashCode hash = Hashing.md5().hashBytes(body);
+            if (cached != null && cached.getHash().equals(hash)) {
+                fetchCache.recordUnchanged();
+                return new Pair<Integer, SpecificationResult>(statusCode, cached.getResult());
+            }
+
+            fetchCache.recordMiss();
+            final SpecificationResult result = streamingParse ? SPECIFICATION_PARSER.parse(body) : OBJECT_MAPPER.readValue(body, SpecificationResult.class);
+            if (result.getSpecification() != null) {
+                fetchCache.put(version, new SpecificationFetchCache.Entry(
+                        urlConnection.getHeaderField("ETag"), urlConnection.getLastModified(), hash, body.length, result));
+            }
             return new Pair<Integer, SpecificationResult>(statusCode, result);
         } catch (Throwable t) {
             final SpecificationResult result = new SpecificationResult();
@@ -320,10 +780,6 @@ public class RemoteProctorSpecificationSource extends DataLoadingTimerTask imple
         }
     }
 
-    private static boolean containsTest(final ProctorSpecification specification, final String testName) {
-        return specification.getTests().containsKey(testName);
-    }
-
     /**
      * This needs to be moved to a separate checker class implementing some interface
      */
@@ -332,4 +788,129 @@ public class RemoteProctorSpecificationSource extends DataLoadingTimerTask imple
         return new URL(urlStr);
     }
 
+    private static class Registration {
+        final RemoteSpecificationResult result;
+        final long expiresAt;
+
+        Registration(final RemoteSpecificationResult result, final long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(final long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * Per-environment latency of the most recent refresh and age of the served specifications, exported through VarExporter
+     */
+    public static class RefreshStats {
+        private final Map<Environment, AtomicLong> latencies = new EnumMap<Environment, AtomicLong>(Environment.class);
+        private final Map<Environment, AtomicLong> timeouts = new EnumMap<Environment, AtomicLong>(Environment.class);
+        // when the served specifications were loaded, -1 before anything was loaded
+        private final Map<Environment, AtomicLong> updated = new EnumMap<Environment, AtomicLong>(Environment.class);
+        private final Map<Environment, AtomicBoolean> fromSnapshot = new EnumMap<Environment, AtomicBoolean>(Environment.class);
+        private final AtomicLong fetched = new AtomicLong(0);
+        private final AtomicLong reused = new AtomicLong(0);
+        private final AtomicLong registrations = new AtomicLong(0);
+
+        RefreshStats() {
+            for (final Environment environment : Environment.values()) {
+                latencies.put(environment, new AtomicLong(-1));
+                timeouts.put(environment, new AtomicLong(0));
+                updated.put(environment, new AtomicLong(-1));
+                fromSnapshot.put(environment, new AtomicBoolean(false));
+            }
+        }
+
+        void recordRegistration() {
+            registrations.incrementAndGet();
+        }
+
+        @Export(name = "registrations", doc = "Number of specifications pushed by client applications")
+        public long getRegistrations() {
+            return registrations.get();
+        }
+
+        void recordProbes(final int fetched, final int reused) {
+            this.fetched.addAndGet(fetched);
+            this.reused.addAndGet(reused);
+        }
+
+        @Export(name = "refresh-fetched", doc = "Number of AppVersions whose specification was fetched by a refresh")
+        public long getFetched() {
+            return fetched.get();
+        }
+
+        @Export(name = "refresh-reused", doc = "Number of AppVersions whose specification was carried over by a refresh without fetching it, because it was pushed or by an incremental refresh")
+        public long getReused() {
+            return reused.get();
+        }
+
+        void recordUpdate(final Environment environment, final long millis, final boolean snapshot) {
+            updated.get(environment).set(millis);
+            fromSnapshot.get(environment).set(snapshot);
+        }
+
+        @Export(name = "specifications-age-seconds", doc = "Age of the oldest specifications served for any environment, -1 until all environments were loaded")
+        public long getSpecificationsAge() {
+            long oldest = Long.MAX_VALUE;
+            for (final AtomicLong millis : updated.values()) {
+                if (millis.get() < 0) {
+                    return -1;
+                }
+                oldest = Math.min(oldest, millis.get());
+            }
+            return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - oldest);
+        }
+
+        @Export(name = "serving-snapshot", doc = "True while the specifications of any environment come from the on-disk snapshot instead of a refresh")
+        public boolean isServingSnapshot() {
+            for (final AtomicBoolean snapshot : fromSnapshot.values()) {
+                if (snapshot.get()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void recordLatency(final Environment environment, final long millis) {
+            latencies.get(environment).set(millis);
+        }
+
+        void recordTimeout(final Environment environment) {
+            timeouts.get(environment).incrementAndGet();
+        }
+
+        @Export(name = "refresh-latency-ms-trunk", doc = "Duration of the last specification refresh of trunk clients")
+        public long getTrunkLatency() {
+            return latencies.get(Environment.WORKING).get();
+        }
+
+        @Export(name = "refresh-latency-ms-qa", doc = "Duration of the last specification refresh of qa clients")
+        public long getQaLatency() {
+            return latencies.get(Environment.QA).get();
+        }
+
+        @Export(name = "refresh-latency-ms-production", doc = "Duration of the last specification refresh of production clients")
+        public long getProductionLatency() {
+            return latencies.get(Environment.PRODUCTION).get();
+        }
+
+        @Export(name = "refresh-timeouts-trunk", doc = "Number of trunk refreshes that exceeded the refresh deadline")
+        public long getTrunkTimeouts() {
+            return timeouts.get(Environment.WORKING).get();
+        }
+
+        @Export(name = "refresh-timeouts-qa", doc = "Number of qa refreshes that exceeded the refresh deadline")
+        public long getQaTimeouts() {
+            return timeouts.get(Environment.QA).get();
+        }
+
+        @Export(name = "refresh-timeouts-production", doc = "Number of production refreshes that exceeded the refresh deadline")
+        public long getProductionTimeouts() {
+            return timeouts.get(Environment.PRODUCTION).get();
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package com.indeed.proctor.webapp;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.indeed.proctor.common.SpecificationResult;
+import com.indeed.proctor.webapp.model.AppVersion;
+import com.indeed.util.varexport.Export;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the last successfully parsed specification of each AppVersion in one environment together
+ * with the validators needed to fetch it conditionally (ETag, Last-Modified and a hash of the body).
+ *
+ * A client answering 304, or returning a body identical to the cached one, reuses the cached
+ * SpecificationResult instead of downloading and parsing it again.
+ */
+class SpecificationFetchCache {
+    private final ConcurrentMap<AppVersion, Entry> entries = Maps.newConcurrentMap();
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong bytesSaved = new AtomicLong(0);
+
+    // @Nullable
+    Entry get(final AppVersion version) {
+        return entries.get(version);
+    }
+
+    void put(final AppVersion version, final Entry entry) {
+        entries.put(version, entry);
+    }
+
+    /**
+     * Drops the entries of AppVersions that are no longer running
+     */
+    void retain(final Set<AppVersion> versions) {
+        entries.keySet().retainAll(versions);
+    }
+
+    void recordNotModified(final Entry entry) {
+        hits.incrementAndGet();
+        bytesSaved.addAndGet(entry.getLength());
+    }
+
+    void recordUnchanged() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    @Export(name = "hits", doc = "Number of specification fetches answered by 304 or with an unchanged body, reusing the parsed specification")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Export(name = "misses", doc = "Number of specification fetches that had to be parsed")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Export(name = "bytes-saved", doc = "Number of specification bytes not downloaded because the client answered 304")
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    @Export(name = "entries", doc = "Number of AppVersions with a cached specification")
+    public int getEntries() {
+        return entries.size();
+    }
+
+    static class Entry {
+        // @Nullable
+        private final String etag;
+        // 0 when the client did not send Last-Modified
+        private final long lastModified;
+        private final HashCode hash;
+        private final int length;
+        private final SpecificationResult result;
+
+        Entry(final String etag,
+              final long lastModified,
+              final HashCode hash,
+              final int length,
+              final SpecificationResult result) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.length = length;
+            this.result = result;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        HashCode getHash() {
+            return hash;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        SpecificationResult getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.indeed.proctor.webapp;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.ProctorSpecification;
+import com.indeed.proctor.webapp.model.AppVersion;
+import com.indeed.proctor.webapp.model.RemoteSpecificationResult;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+/**
+ * Immutable view of the specifications loaded for one environment, with the lookups used on the
+ * request path precomputed: which AppVersions use a test, which tests are used at all and the
+ * specifications of all AppVersions that were loaded successfully.
+ *
+ * Built once whenever the cached results of an environment change, so that the results and the
+ * index derived from them are always swapped together.
+ */
+class SpecificationIndex {
+    static final SpecificationIndex EMPTY = new SpecificationIndex(ImmutableMap.<AppVersion, RemoteSpecificationResult>of());
+
+    private final ImmutableMap<AppVersion, RemoteSpecificationResult> results;
+    private final ImmutableMap<AppVersion, ProctorSpecification> successfulSpecifications;
+    private final ImmutableMap<String, ImmutableSortedSet<AppVersion>> clientsByTest;
+
+    SpecificationIndex(final ImmutableMap<AppVersion, RemoteSpecificationResult> results) {
+        this.results = results;
+
+        final ImmutableMap.Builder<AppVersion, ProctorSpecification> successful = ImmutableMap.builder();
+        final Map<String, ImmutableSortedSet.Builder<AppVersion>> clients = Maps.newHashMap();
+        for (final Map.Entry<AppVersion, RemoteSpecificationResult> entry : results.entrySet()) {
+            final RemoteSpecificationResult remoteResult = entry.getValue();
+            if (!remoteResult.isSuccess()) {
+                continue;
+            }
+            final ProctorSpecification specification = remoteResult.getSpecificationResult().getSpecification();
+            successful.put(entry.getKey(), specification);
+            for (final String testName : specification.getTests().keySet()) {
+                ImmutableSortedSet.Builder<AppVersion> testClients = clients.get(testName);
+                if (testClients == null) {
+                    testClients = ImmutableSortedSet.naturalOrder();
+                    clients.put(testName, testClients);
+                }
+                testClients.add(entry.getKey());
+            }
+        }
+        this.successfulSpecifications = successful.build();
+
+        final ImmutableMap.Builder<String, ImmutableSortedSet<AppVersion>> clientsByTest = ImmutableMap.builder();
+        for (final Map.Entry<String, ImmutableSortedSet.Builder<AppVersion>> entry : clients.entrySet()) {
+            clientsByTest.put(entry.getKey(), entry.getValue().build());
+        }
+        this.clientsByTest = clientsByTest.build();
+    }
+
+    ImmutableMap<AppVersion, RemoteSpecificationResult> getResults() {
+        return results;
+    }
+
+    ImmutableMap<AppVersion, ProctorSpecification> getSuccessfulSpecifications() {
+        return successfulSpecifications;
+    }
+
+    SortedSet<AppVersion> getClients(final String testName) {
+        final ImmutableSortedSet<AppVersion> testClients = clientsByTest.get(testName);
+        return testClients != null ? testClients : ImmutableSortedSet.<AppVersion>of();
+    }
+
+    Set<String> getActiveTests() {
+        return clientsByTest.keySet();
+    }
+}
@@ -0,0 +1,154 @@
+package com.indeed.proctor.webapp;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.PayloadSpecification;
+import com.indeed.proctor.common.ProctorSpecification;
+import com.indeed.proctor.common.SpecificationResult;
+import com.indeed.proctor.common.TestSpecification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Streaming parser for the SpecificationResult served by client applications.
+ *
+ * Only keeps what the webapp uses for indexing and verification (test names, buckets, fallback values,
+ * payload types and the provided context), skips test descriptions and unknown properties without
+ * materializing them, and interns all names so that the thousands of AppVersions that declare the same
+ * tests and buckets share a single copy of each string.
+ */
+class SpecificationParser {
+    private static final Interner<String> NAMES = Interners.newWeakInterner();
+
+    private final ObjectMapper objectMapper;
+
+    SpecificationParser(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    SpecificationResult parse(final InputStream inputStream) throws IOException {
+        return parse(objectMapper.getFactory().createParser(inputStream));
+    }
+
+    SpecificationResult parse(final byte[] body) throws IOException {
+        return parse(objectMapper.getFactory().createParser(body));
+    }
+
+    private SpecificationResult parse(final JsonParser parser) throws IOException {
+        try {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            final SpecificationResult result = new SpecificationResult();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("specification".equals(field)) {
+                    result.setSpecification(value == JsonToken.VALUE_NULL ? null : parseSpecification(parser));
+                } else if ("error".equals(field)) {
+                    result.setError(parser.getValueAsString());
+                } else if ("exception".equals(field)) {
+                    result.setException(parser.getValueAsString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return result;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private ProctorSpecification parseSpecification(final JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        final ProctorSpecification specification = new ProctorSpecification();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("tests".equals(field)) {
+                specification.setTests(parseTests(parser));
+            } else if ("providedContext".equals(field)) {
+                specification.setProvidedContext(parseStrings(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return specification;
+    }
+
+    private Map<String, TestSpecification> parseTests(final JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        final Map<String, TestSpecification> tests = Maps.newLinkedHashMap();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String testName = NAMES.intern(parser.getCurrentName());
+            parser.nextToken();
+            tests.put(testName, parseTest(parser));
+        }
+        return tests.isEmpty() ? Collections.<String, TestSpecification>emptyMap() : tests;
+    }
+
+    private TestSpecification parseTest(final JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        final TestSpecification test = new TestSpecification();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("buckets".equals(field)) {
+                test.setBuckets(parseBuckets(parser));
+            } else if ("fallbackValue".equals(field)) {
+                test.setFallbackValue(parser.getIntValue());
+            } else if ("payload".equals(field)) {
+                final PayloadSpecification payload = parser.readValueAs(PayloadSpecification.class);
+                if (payload.getType() != null) {
+                    payload.setType(NAMES.intern(payload.getType()));
+                }
+                test.setPayload(payload);
+            } else {
+                // descriptions are only shown by the client application itself
+                parser.skipChildren();
+            }
+        }
+        return test;
+    }
+
+    private Map<String, Integer> parseBuckets(final JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        final Map<String, Integer> buckets = Maps.newLinkedHashMap();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String bucketName = NAMES.intern(parser.getCurrentName());
+            parser.nextToken();
+            buckets.put(bucketName, parser.getIntValue());
+        }
+        return buckets;
+    }
+
+    private Map<String, String> parseStrings(final JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        final Map<String, String> strings = Maps.newLinkedHashMap();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String key = NAMES.intern(parser.getCurrentName());
+            parser.nextToken();
+            final String value = parser.getValueAsString();
+            strings.put(key, value != null ? NAMES.intern(value) : null);
+        }
+        return strings;
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual, final JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("Expected " + expected + " but found " + actual, parser.getCurrentLocation());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.indeed.proctor.webapp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.indeed.proctor.common.Serializers;
+import com.indeed.proctor.common.SpecificationResult;
+import com.indeed.proctor.webapp.db.Environment;
+import com.indeed.proctor.webapp.model.AppVersion;
+import com.indeed.proctor.webapp.model.ProctorClientApplication;
+import com.indeed.proctor.webapp.model.RemoteSpecificationResult;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * On-disk copy of the last specifications loaded from the client applications, so that a restarted
+ * webapp can serve them before its first refresh finishes.
+ *
+ * The file holds one JSON object per line, one line per successful or skipped AppVersion; failures
+ * are not persisted. It is written to a temporary file first and then moved over the previous
+ * snapshot, so readers never see a partially written file.
+ */
+class SpecificationSnapshot {
+    private static final Logger LOGGER = Logger.getLogger(SpecificationSnapshot.class);
+
+    private static final ObjectMapper WRITER = Serializers.strict();
+    // tolerate snapshots written by other versions of the webapp
+    private static final ObjectMapper READER = Serializers.lenient();
+
+    private final File file;
+
+    SpecificationSnapshot(final File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return when the snapshot was written, 0 if there is none
+     */
+    long lastModified() {
+        return file.lastModified();
+    }
+
+    void write(final Map<Environment, ? extends Map<AppVersion, RemoteSpecificationResult>> specifications) throws IOException {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory : " + directory);
+        }
+        final File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp.toPath()), Charsets.UTF_8));
+            try {
+                for (final Map.Entry<Environment, ? extends Map<AppVersion, RemoteSpecificationResult>> environment : specifications.entrySet()) {
+                    for (final RemoteSpecificationResult result : environment.getValue().values()) {
+                        if (result.isSuccess() || result.isSkipped()) {
+                            writer.write(WRITER.writeValueAsString(new Line(environment.getKey(), result)));
+                            writer.write('\n');
+                        }
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                LOGGER.warn("Unable to delete " + temp);
+            }
+        }
+    }
+
+    /**
+     * @return the specifications of each environment, empty if there is no snapshot
+     */
+    Map<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>> read() throws IOException {
+        if (!file.isFile()) {
+            return Collections.emptyMap();
+        }
+        final Map<Environment, ImmutableMap.Builder<AppVersion, RemoteSpecificationResult>> builders = new EnumMap<Environment, ImmutableMap.Builder<AppVersion, RemoteSpecificationResult>>(Environment.class);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file.toPath()), Charsets.UTF_8));
+        try {
+            String json;
+            while ((json = reader.readLine()) != null) {
+                if (json.isEmpty()) {
+                    continue;
+                }
+                final Line line = READER.readValue(json, Line.class);
+                final Environment environment = Environment.fromName(line.environment);
+                if (environment == null) {
+                    LOGGER.warn("Ignoring specification of " + line.application + "@" + line.version + " for unknown environment " + line.environment);
+                    continue;
+                }
+                ImmutableMap.Builder<AppVersion, RemoteSpecificationResult> builder = builders.get(environment);
+                if (builder == null) {
+                    builder = ImmutableMap.builder();
+                    builders.put(environment, builder);
+                }
+                final RemoteSpecificationResult result = line.toResult();
+                builder.put(result.getVersion(), result);
+            }
+        } finally {
+            reader.close();
+        }
+
+        final Map<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>> specifications = new EnumMap<Environment, ImmutableMap<AppVersion, RemoteSpecificationResult>>(Environment.class);
+        for (final Map.Entry<Environment, ImmutableMap.Builder<AppVersion, RemoteSpecificationResult>> entry : builders.entrySet()) {
+            specifications.put(entry.getKey(), entry.getValue().build());
+        }
+        return specifications;
+    }
+
+    /**
+     * One line of the snapshot. ProctorClientApplication and RemoteSpecificationResult are immutable
+     * without default constructors, so they are flattened into public fields here.
+     */
+    static class Line {
+        public String environment;
+        public String application;
+        public String version;
+        public boolean skipped;
+        public String baseApplicationUrl;
+        public String address;
+        public Date lastUpdate;
+        public SpecificationResult specificationResult;
+
+        public Line() {
+        }
+
+        Line(final Environment environment, final RemoteSpecificationResult result) {
+            final ProctorClientApplication client = result.isSkipped() ? result.getSkipped() : result.getClientApplication();
+            this.environment = environment.getName();
+            this.application = result.getVersion().getApp();
+            this.version = result.getVersion().getVersion();
+            this.skipped = result.isSkipped();
+            this.baseApplicationUrl = client.getBaseApplicationUrl();
+            this.address = client.getAddress();
+            this.lastUpdate = client.getLastUpdate();
+            this.specificationResult = result.getSpecificationResult();
+        }
+
+        RemoteSpecificationResult toResult() {
+            final ProctorClientApplication client = new ProctorClientApplication(application, baseApplicationUrl, address, lastUpdate, version);
+            final RemoteSpecificationResult.Builder builder = RemoteSpecificationResult.newBuilder(new AppVersion(application, version));
+            if (skipped) {
+                builder.skipped(client, specificationResult);
+            } else {
+                builder.success(client, specificationResult);
+            }
+            return builder.build(Collections.<ProctorClientApplication>emptyList());
+        }
+    }
+}
@@ -6,9 +6,12 @@ import com.indeed.proctor.common.model.TestMatrixVersion;
 import com.indeed.proctor.store.ProctorStore;
 import com.indeed.proctor.store.Revision;
 import com.indeed.proctor.store.StoreException;
+import com.indeed.proctor.webapp.CurrentMatrixCache;
 import com.indeed.proctor.webapp.db.Environment;
+import com.indeed.proctor.webapp.model.TestMatrixSearchIndex;
 import com.indeed.proctor.webapp.model.WebappConfiguration;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
@@ -27,6 +30,9 @@ public class AbstractController {
     private final WebappConfiguration configuration;
     private final Map<Environment, ProctorStore> stores;
 
+    @Autowired(required = false)
+    private CurrentMatrixCache matrixCache;
+
     public AbstractController(final WebappConfiguration configuration,
                               final ProctorStore trunkStore,
                               final ProctorStore qaStore,
@@ -75,8 +81,39 @@ public class AbstractController {
     }
 
     protected TestMatrixVersion getCurrentMatrix(final Environment branch) {
+        final CurrentMatrixCache.MatrixView view = getCurrentMatrixView(branch);
+        return view != null ? view.getTestMatrixVersion() : null;
+    }
+
+    /**
+     * @return the current matrix of the branch with its consumable artifact, shared by all requests until the store moves
+     */
+    @Nullable
+    protected CurrentMatrixCache.MatrixView getCurrentMatrixView(final Environment branch) {
         try {
-            return determineStoreFromEnvironment(branch).getCurrentTestMatrix();
+            if (matrixCache != null) {
+                return matrixCache.get(branch);
+            }
+            final ProctorStore store = determineStoreFromEnvironment(branch);
+            return new CurrentMatrixCache.MatrixView(store.getCurrentTestMatrix());
+        } catch (StoreException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the search index of the current matrix of the branch, shared by all requests until the store moves
+     */
+    @Nullable
+    protected TestMatrixSearchIndex getSearchIndex(final Environment branch) {
+        try {
+            if (matrixCache != null) {
+                return matrixCache.getSearchIndex(branch);
+            }
+            final ProctorStore store = determineStoreFromEnvironment(branch);
+            return TestMatrixSearchIndex.build(store.getLatestVersion(),
+                    store.getCurrentTestMatrix().getTestMatrixDefinition(),
+                    store.getAllHistories());
         } catch (StoreException e) {
             return null;
         }
@@ -8,7 +8,11 @@ import org.apache.log4j.Logger;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 /**
  */
@@ -30,7 +34,8 @@ public abstract class BackgroundJob<T> implements Callable<T> {
     private String endMessage = "";
 
     private Throwable error = null;
-    private boolean executeFinished = false;
+    // set by the thread completing the job, read by the threads polling its status
+    private volatile boolean executeFinished = false;
 
     public void log(final String message) {
         logBuilder.append(message).append("\n");
@@ -176,20 +181,21 @@ public abstract class BackgroundJob<T> implements Callable<T> {
 
     protected abstract T execute() throws Exception;
 
+    /**
+     * Returns a future running the job without blocking the calling thread. The default runs {@link #execute()}
+     * on the calling thread, jobs handing their work over to other executors override it.
+     */
+    protected CompletableFuture<T> executeAsync() throws Exception {
+        return CompletableFuture.completedFuture(execute());
+    }
+
     @Override
     public T call() throws Exception {
-        T result = null;
-
-        try {
-            for (final BeforeBackgroundJobExecute beforeBackgroundJobExecute : getBeforeBackgroundJobExecutes()) {
-                beforeBackgroundJobExecute.beforeExecute(this);
-            }
-        } catch (final Exception e) {
-            LOGGER.error("BeforeBackgroundJobExecute Failed: " + getTitle(), e);
-            logFailedJob(e);
+        if (!runBeforeExecutes()) {
             return null;
         }
 
+        T result = null;
         try {
             result = execute();
         } catch (final Exception e) {
@@ -199,6 +205,67 @@ public abstract class BackgroundJob<T> implements Callable<T> {
             executeFinished = true;
         }
 
+        runAfterExecutes(result);
+        return result;
+    }
+
+    /**
+     * Starts the job on the given executor without holding its thread until the job is done: the before execute
+     * extensions and {@link #executeAsync()} run there, nothing runs on the calling thread.
+     * The future of the job is the returned future, set before this returns, which completes once the future of
+     * {@link #executeAsync()} completed and the after execute extensions ran.
+     */
+    public CompletableFuture<T> start(final Executor executor) {
+        final CompletableFuture<T> completion = new CompletableFuture<T>();
+        setFuture(completion);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!runBeforeExecutes()) {
+                    completion.complete(null);
+                    return;
+                }
+
+                CompletableFuture<T> execution;
+                try {
+                    execution = executeAsync();
+                } catch (final Exception e) {
+                    execution = new CompletableFuture<T>();
+                    execution.completeExceptionally(e);
+                }
+                execution.whenComplete(new BiConsumer<T, Throwable>() {
+                    @Override
+                    public void accept(final T value, final Throwable error) {
+                        if (error != null) {
+                            final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                            LOGGER.error("Background Job Failed: " + getTitle(), cause);
+                            logFailedJob(cause);
+                        }
+                        executeFinished = true;
+                        final T result = error == null ? value : null;
+                        runAfterExecutes(result);
+                        completion.complete(result);
+                    }
+                });
+            }
+        });
+        return completion;
+    }
+
+    private boolean runBeforeExecutes() {
+        try {
+            for (final BeforeBackgroundJobExecute beforeBackgroundJobExecute : getBeforeBackgroundJobExecutes()) {
+                beforeBackgroundJobExecute.beforeExecute(this);
+            }
+            return true;
+        } catch (final Exception e) {
+            LOGGER.error("BeforeBackgroundJobExecute Failed: " + getTitle(), e);
+            logFailedJob(e);
+            return false;
+        }
+    }
+
+    private void runAfterExecutes(final T result) {
         try {
             for (final AfterBackgroundJobExecute afterBackgroundJobExecute : getAfterBackgroundJobExecutes()) {
                 afterBackgroundJobExecute.afterExecute(this, result);
@@ -207,8 +274,6 @@ public abstract class BackgroundJob<T> implements Callable<T> {
             LOGGER.error("AfterBackgroundJobExecute Failed: " + getTitle(), e);
             logFailedJob(e);
         }
-
-        return result;
     }
 
     public enum JobType {
@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class BackgroundJobFactory {
     @Autowired(required=false)
@@ -17,6 +18,10 @@ public class BackgroundJobFactory {
         T execute(BackgroundJob job) throws Exception;
     }
 
+    public interface AsyncExecutor<T> {
+        CompletableFuture<T> execute(BackgroundJob job) throws Exception;
+    }
+
     public <T> BackgroundJob<T> createBackgroundJob(final String jobTitle, final BackgroundJob.JobType jobType, final Executor<T> executor) {
         return new BackgroundJob<T>() {
             @Override
@@ -45,4 +50,42 @@ public class BackgroundJobFactory {
             }
         };
     }
+
+    /**
+     * Creates a job meant to be submitted with {@link BackgroundJobManager#submitAsync(BackgroundJob)}, whose
+     * work runs on the executors the future returned by the executor depends on.
+     */
+    public <T> BackgroundJob<T> createAsyncBackgroundJob(final String jobTitle, final BackgroundJob.JobType jobType, final AsyncExecutor<T> executor) {
+        return new BackgroundJob<T>() {
+            @Override
+            public String getTitle() {
+                return jobTitle;
+            }
+
+            @Override
+            public JobType getJobType() {
+                return jobType;
+            }
+
+            @Override
+            protected T execute() throws Exception {
+                return executor.execute(this).get();
+            }
+
+            @Override
+            protected CompletableFuture<T> executeAsync() throws Exception {
+                return executor.execute(this);
+            }
+
+            @Override
+            protected List<BeforeBackgroundJobExecute> getBeforeBackgroundJobExecutes() {
+                return beforeBackgroundJobExecutes;
+            }
+
+            @Override
+            protected List<AfterBackgroundJobExecute> getAfterBackgroundJobExecutes() {
+                return afterBackgroundJobExecutes;
+            }
+        };
+    }
 }
@@ -62,6 +62,22 @@ public class BackgroundJobManager {
         LOGGER.info("a background job was submitted : id=" + id + " uuid=" + uuid + " title=" + job.getTitle());
     }
 
+    /**
+     * Starts a job whose work runs on other executors (see {@link BackgroundJob#start(java.util.concurrent.Executor)}):
+     * it is started on one of the threads of this manager, which it does not hold while it waits for them.
+     */
+    public <T> void submitAsync(BackgroundJob<T> job) {
+        final long id = lastId.incrementAndGet();
+        final UUID uuid = UUID.randomUUID();
+        job.setId(id);
+        job.setUUID(uuid);
+        // start() sets the future of the job, which getRecentJobs expects, before it returns
+        job.start(service);
+        backgroundJobs.add(job);
+        history.put(uuid, job);
+        LOGGER.info("a background job was started : id=" + id + " uuid=" + uuid + " title=" + job.getTitle());
+    }
+
     public List<BackgroundJob> getRecentJobs() {
         List<BackgroundJob> recent = Lists.newArrayListWithCapacity(backgroundJobs.size());
         ListIterator<BackgroundJob> jobs = backgroundJobs.listIterator();
@@ -1,29 +1,22 @@
 package com.indeed.proctor.webapp.controllers;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
-import com.google.common.base.Charsets;
-import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
-import com.google.common.collect.FluentIterable;
+import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.indeed.proctor.common.ProctorLoadResult;
+import com.indeed.proctor.common.ProctorPromoter;
 import com.indeed.proctor.common.ProctorSpecification;
 import com.indeed.proctor.common.ProctorUtils;
-import com.indeed.proctor.common.Serializers;
 import com.indeed.proctor.common.TestSpecification;
-import com.indeed.proctor.common.model.TestBucket;
-import com.indeed.proctor.common.model.TestDefinition;
 import com.indeed.proctor.common.model.TestMatrixArtifact;
 import com.indeed.proctor.common.model.TestMatrixDefinition;
 import com.indeed.proctor.common.model.TestMatrixVersion;
-import com.indeed.proctor.store.Revision;
-import com.indeed.proctor.store.StoreException;
+import com.indeed.proctor.webapp.CurrentMatrixCache;
 import com.indeed.proctor.webapp.ProctorSpecificationSource;
 import com.indeed.proctor.webapp.db.Environment;
 import com.indeed.proctor.store.ProctorStore;
@@ -31,33 +24,30 @@ import com.indeed.proctor.webapp.model.AppVersion;
 import com.indeed.proctor.webapp.model.ProctorClientApplication;
 import com.indeed.proctor.webapp.model.RemoteSpecificationResult;
 import com.indeed.proctor.webapp.model.SessionViewModel;
+import com.indeed.proctor.webapp.model.TestMatrixSearchIndex;
+import com.indeed.proctor.webapp.model.TestMatrixSearchResult;
 import com.indeed.proctor.webapp.model.WebappConfiguration;
 import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
 import com.indeed.proctor.webapp.views.JsonView;
 import org.apache.log4j.Logger;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -68,15 +58,20 @@ import java.util.concurrent.ThreadFactory;
 public class ProctorController extends AbstractController {
     private static final Logger LOGGER = Logger.getLogger(ProctorController.class);
 
-    private static final long FALLBACK_UPDATED_TIME = 0L;
-
-    private final ObjectMapper objectMapper = Serializers.strict();
+    // written by filter/favorites.js, the most recent favorite first
+    private static final String FAVORITES_COOKIE = "FavoriteTests";
+    private static final Splitter FAVORITES_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
     private final int verificationTimeout;
     private final ExecutorService executor;
     private final ProctorSpecificationSource specificationSource;
 
+    // @Nullable - warms the EnvironmentVersion of the tests listed on the matrix page when set
+    @Autowired(required = false)
+    private ProctorPromoter promoter;
+
     private static enum View {
         MATRIX_LIST("matrix/list"),
+        MATRIX_LIST_PAGE("matrix/list-page"),
         MATRIX_USAGE("matrix/usage"),
         MATRIX_COMPATIBILITY("matrix/compatibility"),
         ERROR("error"),;
@@ -115,7 +110,8 @@ public class ProctorController extends AbstractController {
     @RequestMapping(value="/", method=RequestMethod.GET)
     public String viewTestMatrix(final String branch,
                                  final Model model,
-                                 @RequestParam(defaultValue="50") final Integer testsPerPage) {
+                                 @RequestParam(defaultValue="50") final Integer testsPerPage,
+                                 @CookieValue(value=FAVORITES_COOKIE, defaultValue="") final String favorites) {
         final Environment which = determineEnvironmentFromParameter(branch);
 
         boolean emptyClients = true;
@@ -124,15 +120,75 @@ public class ProctorController extends AbstractController {
         }
         model.addAttribute("emptyClients", emptyClients);
         model.addAttribute("testsPerPage", testsPerPage);
-        return getArtifactForView(model, which, View.MATRIX_LIST);
+        model.addAttribute("session",
+                           SessionViewModel.builder()
+                               .setUseCompiledCSS(getConfiguration().isUseCompiledCSS())
+                               .setUseCompiledJavaScript(getConfiguration().isUseCompiledJavaScript())
+                                   // todo get the appropriate js compile / non-compile url
+                               .build());
+
+        // only the first page is rendered, the list fetches the others from /matrix/list/page
+        final TestMatrixSearchIndex index = getSearchIndexOrEmpty(which);
+        final TestMatrixSearchResult result = index.search("", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL,
+                TestMatrixSearchIndex.Sort.FAVORITES, FAVORITES_SPLITTER.splitToList(favorites), 0, testsPerPage);
+        return populateMatrixListPage(model, which, result, View.MATRIX_LIST);
     }
 
+    /**
+     * Filters, sorts and pages the tests of the current matrix of the branch.
+     *
+     * @param q whitespace separated words that must all appear in the given field, ignoring case
+     * @param field all, testName, description, rule, bucket or bucketDescription
+     * @param status all, active or inactive
+     * @param sort favorites, testName or updated
+     * @param favorites comma separated test names listed first when sorting by favorites,
+     *                  defaults to the favorites of the list page
+     * @param page 0 based
+     */
+    @RequestMapping(value="/matrix/search", method=RequestMethod.GET)
+    public JsonView searchTestMatrix(final String branch,
+                                     @RequestParam(defaultValue="") final String q,
+                                     @RequestParam(defaultValue="all") final String field,
+                                     @RequestParam(defaultValue="all") final String status,
+                                     @RequestParam(defaultValue="favorites") final String sort,
+                                     @RequestParam(required=false) final String favorites,
+                                     @CookieValue(value=FAVORITES_COOKIE, defaultValue="") final String favoritesCookie,
+                                     @RequestParam(defaultValue="0") final int page,
+                                     @RequestParam(defaultValue="50") final int testsPerPage) {
+        final Environment which = determineEnvironmentFromParameter(branch);
+        return new JsonView(searchTestMatrix(which, q, field, status, sort, favorites != null ? favorites : favoritesCookie, page, testsPerPage));
+    }
+
+    /**
+     * Same search as /matrix/search, rendered as the tests of the matrix list page
+     */
+    @RequestMapping(value="/matrix/list/page", method=RequestMethod.GET)
+    public String viewTestMatrixPage(final String branch,
+                                     final Model model,
+                                     @RequestParam(defaultValue="") final String q,
+                                     @RequestParam(defaultValue="all") final String field,
+                                     @RequestParam(defaultValue="all") final String status,
+                                     @RequestParam(defaultValue="favorites") final String sort,
+                                     @CookieValue(value=FAVORITES_COOKIE, defaultValue="") final String favorites,
+                                     @RequestParam(defaultValue="0") final int page,
+                                     @RequestParam(defaultValue="50") final int testsPerPage) {
+        final Environment which = determineEnvironmentFromParameter(branch);
+        final TestMatrixSearchResult result = searchTestMatrix(which, q, field, status, sort, favorites, page, testsPerPage);
+        return populateMatrixListPage(model, which, result, View.MATRIX_LIST_PAGE);
+    }
+
+    /**
+     * Sent with an ETag: a poll with If-None-Match gets a 304 until the branch moves.
+     * The artifact is serialized once per revision of the branch and its bytes are sent as is.
+     */
     @RequestMapping(value="/matrix/raw", method=RequestMethod.GET)
-    public JsonView viewRawTestMatrix(final String branch, final Model model) {
+    public JsonView viewRawTestMatrix(final String branch, final Model model) throws IOException {
         final Environment which = determineEnvironmentFromParameter(branch);
-        final TestMatrixVersion testMatrixVersion = getCurrentMatrix(which);
-        final TestMatrixArtifact testMatrixArtifact = ProctorUtils.convertToConsumableArtifact(testMatrixVersion);
-        return new JsonView(testMatrixArtifact);
+        final CurrentMatrixCache.MatrixView view = getCurrentMatrixView(which);
+        if (view == null) {
+            return new JsonView(null);
+        }
+        return new JsonView(view.getSerializedArtifact(), "artifact-" + which.getName() + "-" + view.getRevision(), JsonView.CACHE_REVALIDATE);
     }
 
     @RequestMapping(value="/usage", method=RequestMethod.GET)
@@ -141,19 +197,19 @@ public class ProctorController extends AbstractController {
         final Map<String, CompatibilityRow> tests = Maps.newTreeMap();
 
 
-        final TestMatrixVersion devMatrix = getCurrentMatrix(Environment.WORKING);
+        final CurrentMatrixCache.MatrixView devMatrix = getCurrentMatrixView(Environment.WORKING);
         populateTestUsageViewModel(Environment.WORKING, devMatrix, tests, Environment.WORKING);
 
-        final TestMatrixVersion qaMatrix = getCurrentMatrix(Environment.QA);
+        final CurrentMatrixCache.MatrixView qaMatrix = getCurrentMatrixView(Environment.QA);
         populateTestUsageViewModel(Environment.QA, qaMatrix, tests, Environment.QA);
 
-        final TestMatrixVersion productionMatrix = getCurrentMatrix(Environment.PRODUCTION);
+        final CurrentMatrixCache.MatrixView productionMatrix = getCurrentMatrixView(Environment.PRODUCTION);
         populateTestUsageViewModel(Environment.PRODUCTION, productionMatrix, tests, Environment.PRODUCTION);
 
         model.addAttribute("tests", tests);
-        model.addAttribute("devMatrix", devMatrix);
-        model.addAttribute("qaMatrix", qaMatrix);
-        model.addAttribute("productionMatrix", productionMatrix);
+        model.addAttribute("devMatrix", devMatrix.getTestMatrixVersion());
+        model.addAttribute("qaMatrix", qaMatrix.getTestMatrixVersion());
+        model.addAttribute("productionMatrix", productionMatrix.getTestMatrixVersion());
         model.addAttribute("session",
                            SessionViewModel.builder()
                                .setUseCompiledCSS(getConfiguration().isUseCompiledCSS())
@@ -177,10 +233,11 @@ public class ProctorController extends AbstractController {
 
 
     private void populateTestUsageViewModel(final Environment matrixEnvironment,
-                                            final TestMatrixVersion matrix,
+                                            final CurrentMatrixCache.MatrixView matrixView,
                                             final Map<String, CompatibilityRow> tests,
                                             final Environment environment) {
-        final TestMatrixArtifact artifact = ProctorUtils.convertToConsumableArtifact(matrix);
+        final TestMatrixVersion matrix = matrixView.getTestMatrixVersion();
+        final TestMatrixArtifact artifact = matrixView.getArtifact();
 
         final Map<AppVersion, ProctorSpecification> clients = specificationSource.loadAllSuccessfulSpecifications(environment);
         // sort the apps (probably should sort the Map.Entry, but this is good enough for now
@@ -238,8 +295,7 @@ public class ProctorController extends AbstractController {
     private void populateCompabilityRow(final Map<Environment, CompatibilityRow> rows, final Environment rowEnv) {
         final CompatibilityRow row = new CompatibilityRow();
         rows.put(rowEnv, row);
-        final TestMatrixVersion matrix = getCurrentMatrix(rowEnv);
-        final TestMatrixArtifact artifact = ProctorUtils.convertToConsumableArtifact(matrix);
+        final TestMatrixArtifact artifact = getCurrentMatrixView(rowEnv).getArtifact();
         populateSingleCompabilityColumn(rowEnv, artifact, row, Environment.WORKING);
         populateSingleCompabilityColumn(rowEnv, artifact, row, Environment.QA);
         populateSingleCompabilityColumn(rowEnv, artifact, row, Environment.PRODUCTION);
@@ -357,82 +413,48 @@ public class ProctorController extends AbstractController {
         }
     }
 
-    @Nullable
-    private Date getUpdatedDate(final Map<String, List<Revision>> allHistories, final String testName) {
-        if (allHistories == null) {
-            return null;
-        }
-        final List<Revision> revisions = allHistories.get(testName);
-        if ((revisions == null) || revisions.isEmpty()) {
-            LOGGER.error(testName + " does't have any revision in allHistories.");
-            return null;
-        }
-        return revisions.get(0).getDate();
+    private TestMatrixSearchResult searchTestMatrix(final Environment branch,
+                                                    final String query,
+                                                    final String field,
+                                                    final String status,
+                                                    final String sort,
+                                                    final String favorites,
+                                                    final int page,
+                                                    final int testsPerPage) {
+        return getSearchIndexOrEmpty(branch).search(query,
+                TestMatrixSearchIndex.Field.fromName(field),
+                TestMatrixSearchIndex.Status.fromName(status),
+                TestMatrixSearchIndex.Sort.fromName(sort),
+                FAVORITES_SPLITTER.splitToList(favorites),
+                page,
+                testsPerPage);
     }
 
-    private String getArtifactForView(final Model model, final Environment branch, final View view) {
-        final TestMatrixVersion testMatrix = getCurrentMatrix(branch);
-        final TestMatrixDefinition testMatrixDefinition;
-        if (testMatrix == null) {
-            testMatrixDefinition = new TestMatrixDefinition();
-        } else {
-            testMatrixDefinition = testMatrix.getTestMatrixDefinition();
+    private TestMatrixSearchIndex getSearchIndexOrEmpty(final Environment branch) {
+        final TestMatrixSearchIndex index = getSearchIndex(branch);
+        if (index == null) {
+            LOGGER.error("Failed to build the search index of the " + branch + " test matrix");
+            return TestMatrixSearchIndex.build("", new TestMatrixDefinition(), null);
         }
+        return index;
+    }
 
-        model.addAttribute("branch", branch);
-        model.addAttribute("session",
-                           SessionViewModel.builder()
-                               .setUseCompiledCSS(getConfiguration().isUseCompiledCSS())
-                               .setUseCompiledJavaScript(getConfiguration().isUseCompiledJavaScript())
-                                   // todo get the appropriate js compile / non-compile url
-                               .build());
-        model.addAttribute("testMatrixVersion", testMatrix);
-
-        final Set<String> testNames = testMatrixDefinition.getTests().keySet();
-        final Map<String, List<Revision>> allHistories = getAllHistories(branch);
-        final Map<String, Long> updatedTimeMap = FluentIterable.from(testNames).toMap(new Function<String, Long>() {
-            @Override
-            public Long apply(final String testName) {
-                final Date updatedDate = getUpdatedDate(allHistories, testName);
-                if (updatedDate != null) {
-                    return updatedDate.getTime();
-                } else {
-                    return FALLBACK_UPDATED_TIME;
-                }
-            }
-        });
-        model.addAttribute("updatedTimeMap", updatedTimeMap);
-
-        final String errorMessage = "Apparently not impossible exception generating JSON";
-        try {
-            final String testMatrixJson = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(testMatrixDefinition);
-            model.addAttribute("testMatrixDefinition", testMatrixJson);
-
-            final Map<String, Map<String, String>> colors = Maps.newHashMap();
-            for (final Entry<String, TestDefinition> entry : testMatrixDefinition.getTests().entrySet()) {
-                final Map<String, String> testColors = Maps.newHashMap();
-                for (final TestBucket bucket : entry.getValue().getBuckets()) {
-                    final long hashedBucketName = Hashing.md5().newHasher().putString(bucket.getName(), Charsets.UTF_8).hash().asLong();
-                    final int color = ((int) (hashedBucketName & 0x00FFFFFFL)) | 0x00808080; //  convert a hash of the bucket to a color, but keep it light
-                    testColors.put(bucket.getName(), Integer.toHexString(color));
-                }
-                colors.put(entry.getKey(), testColors);
+    private String populateMatrixListPage(final Model model,
+                                          final Environment branch,
+                                          final TestMatrixSearchResult result,
+                                          final View view) {
+        if (promoter != null) {
+            // every test of the page links to its detail page, which needs its EnvironmentVersion
+            final List<String> testNames = Lists.newArrayListWithCapacity(result.getTests().size());
+            for (final TestMatrixSearchResult.Test test : result.getTests()) {
+                testNames.add(test.getTestName());
             }
-            model.addAttribute("colors", colors);
-
-            return view.getName();
-        } catch (final JsonGenerationException e) {
-            LOGGER.error(errorMessage, e);
-            model.addAttribute("exception", toString(e));
-        } catch (final JsonMappingException e) {
-            LOGGER.error(errorMessage, e);
-            model.addAttribute("exception", toString(e));
-        } catch (final IOException e) {
-            LOGGER.error(errorMessage, e);
-            model.addAttribute("exception", toString(e));
+            promoter.prefetchEnvironmentVersions(testNames);
         }
-        model.addAttribute("error", errorMessage);
-        return View.ERROR.getName();
+        model.addAttribute("branch", branch);
+        model.addAttribute("testMatrixVersion", getCurrentMatrix(branch));
+        model.addAttribute("result", result);
+        return view.getName();
     }
 
     /**
@@ -447,23 +469,6 @@ public class ProctorController extends AbstractController {
         }
     }
 
-    private Map<String, List<Revision>> getAllHistories(final Environment branch) {
-        try {
-            return determineStoreFromEnvironment(branch).getAllHistories();
-        } catch (final StoreException e) {
-            LOGGER.error("Failed to get all histories from proctor store of " + branch, e);
-            return null;
-        }
-    }
-
-    private static String toString(final Throwable t) {
-        final StringWriter sw = new StringWriter();
-        final PrintWriter pw = new PrintWriter(sw);
-        t.printStackTrace(pw);
-        pw.close();
-        return sw.toString();
-    }
-
     public static class CompatibleSpecificationResult {
         private final AppVersion appVersion;
         private final boolean isCompatible;
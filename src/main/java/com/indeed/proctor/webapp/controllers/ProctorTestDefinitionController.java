@@ -9,6 +9,7 @@ import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -35,6 +36,7 @@ import com.indeed.proctor.store.StoreException;
 import com.indeed.proctor.store.GitNoAuthorizationException;
 import com.indeed.proctor.store.GitNoMasterAccessLevelException;
 import com.indeed.proctor.store.GitNoDevelperAccessLevelException;
+import com.indeed.proctor.webapp.CurrentMatrixCache;
 import com.indeed.proctor.webapp.ProctorSpecificationSource;
 import com.indeed.proctor.webapp.controllers.BackgroundJob.ResultUrl;
 import com.indeed.proctor.webapp.db.Environment;
@@ -55,6 +57,8 @@ import com.indeed.proctor.webapp.model.SessionViewModel;
 import com.indeed.proctor.webapp.model.WebappConfiguration;
 import com.indeed.proctor.webapp.tags.TestDefinitionFunctions;
 import com.indeed.proctor.webapp.tags.UtilityFunctions;
+import com.indeed.proctor.webapp.util.threads.FanOut;
+import com.indeed.proctor.webapp.util.threads.StagedPipeline;
 import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
 import com.indeed.proctor.webapp.views.JsonView;
 import org.apache.log4j.Logger;
@@ -83,17 +87,17 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Stream;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -109,6 +113,10 @@ public class ProctorTestDefinitionController extends AbstractController {
     private static final Pattern VALID_TEST_NAME_PATTERN = ALPHA_NUMERIC_JAVA_IDENTIFIER_PATTERN;
     private static final Pattern VALID_BUCKET_NAME_PATTERN = ALPHA_NUMERIC_JAVA_IDENTIFIER_PATTERN;
 
+    // Verifying a single test against a cached specification is cpu-bound and should be fast
+    private static final long VERIFY_TASK_TIMEOUT_SECONDS = 10;
+    private static final long VERIFY_TIMEOUT_SECONDS = 60;
+
     private final ProctorPromoter promoter;
 
     private final ProctorSpecificationSource specificationSource;
@@ -117,6 +125,8 @@ public class ProctorTestDefinitionController extends AbstractController {
 
     private final BackgroundJobManager jobManager;
     private final BackgroundJobFactory jobFactory;
+    // validate, verify against the clients, commit, post promote extensions: keyed by test name
+    private final StagedPipeline<String> promotionPipeline;
 
     /*
        TODO: preDefinitionChanges and postDefinitionChanges should be included in the autowird constructor.
@@ -184,6 +194,10 @@ public class ProctorTestDefinitionController extends AbstractController {
                 .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
                 .build();
         this.verifierExecutor = Executors.newFixedThreadPool(configuration.getVerifyExecutorThreads(), threadFactory);
+        this.promotionPipeline = new StagedPipeline<String>("PromotionPipeline",
+                ImmutableList.of("validate", "verify", "commit", "post-hooks"),
+                configuration.getPromotionStageThreads(),
+                configuration.getPromotionStageQueueCapacity());
 
     }
 
@@ -491,7 +505,7 @@ public class ProctorTestDefinitionController extends AbstractController {
         final Map<String, String[]> requestParameterMap = new HashMap<String, String[]>();
         requestParameterMap.putAll(request.getParameterMap());
         final BackgroundJob job = doPromoteInternal(testName, username, password, source, srcRevision, destination, destRevision, requestParameterMap);
-        jobManager.submit(job);
+        jobManager.submitAsync(job);
 
         if (isAJAXRequest(request)) {
             final JsonResponse<Map> response = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
@@ -510,81 +524,173 @@ public class ProctorTestDefinitionController extends AbstractController {
                                             final String destRevision,
                                             final Map<String, String[]> requestParameterMap
     ) {
-        return jobFactory.createBackgroundJob(
+        return jobFactory.createAsyncBackgroundJob(
                 String.format("(%s) promoting %s %s %1.7s to %s", username, testName, source, srcRevision, destination),
                 BackgroundJob.JobType.TEST_PROMOTION,
-                new BackgroundJobFactory.Executor() {
+                new BackgroundJobFactory.AsyncExecutor<Object>() {
                     @Override
-                    public Object execute(final BackgroundJob job) {
+                    public CompletableFuture<Object> execute(final BackgroundJob job) {
                         /*
                             Valid permutations:
                             TRUNK -> QA
                             TRUNK -> PRODUCTION
                             QA -> PRODUCTION
                          */
-                        try {
-                            doJobIndependentPromoteInternal(testName, username, password, source, srcRevision, destination, destRevision, requestParameterMap, job, false);
-                        } catch (final GitNoAuthorizationException | GitNoMasterAccessLevelException | GitNoDevelperAccessLevelException exp) {
-                            job.logFailedJob(exp);
-                            LOGGER.info("Promotion Failed: " + job.getTitle(), exp);
-                        } catch (ProctorPromoter.TestPromotionException exp) {
-                            job.logFailedJob(exp);
-                            LOGGER.error("Promotion Failed: " + job.getTitle(), exp);
-                        } catch (StoreException.TestUpdateException exp) {
-                            job.logFailedJob(exp);
-                            LOGGER.error("Promotion Failed: " + job.getTitle(), exp);
-                        } catch (IllegalArgumentException exp) {
-                            job.logFailedJob(exp);
-                            LOGGER.info("Promotion Failed: " + job.getTitle(), exp);
-                        } catch (Exception exp) {
-                            job.logFailedJob(exp);
-                            LOGGER.error("Promotion Failed: " + job.getTitle(), exp);
-                        }
-
-                        return null;
+                        final Promotion promotion = new Promotion(testName, username, password, source, srcRevision, destination, destRevision, requestParameterMap, job, false);
+                        return promotion.submit(job, ImmutableList.of(testName));
                     }
                 }
         );
     }
-    private boolean doJobIndependentPromoteInternal(final String testName,
-                                                    final String username,
-                                                    final String password,
-                                                    final Environment source,
-                                                    final String srcRevision,
-                                                    final Environment destination,
-                                                    final String destRevision,
-                                                    final Map<String, String[]> requestParameterMap,
-                                                    final BackgroundJob job,
-                                                    final boolean isAutopromote) throws Exception {
-        final Map<String, String> metadata = Collections.emptyMap();
-        validateUsernamePassword(username, password);
-
-        // TODO (parker) 9/5/12 - Verify that promoting to the destination branch won't cause issues
-        final TestDefinition testDefintion = getTestDefinition(source, testName, srcRevision);
-        //            if(d == null) {
-        //                return "could not find " + testName + " on " + source + " with revision " + srcRevision;
-        //            }
-
-        final CheckMatrixResult result = checkMatrix(destination, testName, testDefintion);
-        if (!result.isValid()) {
-            throw new IllegalArgumentException(String.format("Test Promotion not compatible, errors: %s", Joiner.on("\n").join(result.getErrors())));
+
+    private static void logPromotionFailure(final BackgroundJob job, final Throwable exp) {
+        job.logFailedJob(exp);
+        if (exp instanceof GitNoAuthorizationException
+                || exp instanceof GitNoMasterAccessLevelException
+                || exp instanceof GitNoDevelperAccessLevelException
+                || exp instanceof IllegalArgumentException) {
+            LOGGER.info("Promotion Failed: " + job.getTitle(), exp);
         } else {
+            LOGGER.error("Promotion Failed: " + job.getTitle(), exp);
+        }
+    }
+
+    /**
+     * The steps of a promotion, one per stage of the promotion pipeline.
+     * Each step runs after the previous one completed, possibly on another thread.
+     */
+    private abstract class PromotionSteps {
+        abstract void validate() throws Exception;
+
+        abstract void verify() throws Exception;
+
+        abstract void commit() throws Exception;
+
+        abstract void runPostHooks() throws Exception;
+
+        /**
+         * Runs the steps once every previous promotion of one of the given tests is done.
+         * The returned future always completes normally, a failure is logged to the job.
+         */
+        CompletableFuture<Object> submit(final BackgroundJob job, final List<String> testNames) {
+            return promotionPipeline.submit(testNames, ImmutableList.<StagedPipeline.Step>of(
+                    new StagedPipeline.Step() {
+                        @Override
+                        public void run() throws Exception {
+                            validate();
+                        }
+                    },
+                    new StagedPipeline.Step() {
+                        @Override
+                        public void run() throws Exception {
+                            verify();
+                        }
+                    },
+                    new StagedPipeline.Step() {
+                        @Override
+                        public void run() throws Exception {
+                            commit();
+                        }
+                    },
+                    new StagedPipeline.Step() {
+                        @Override
+                        public void run() throws Exception {
+                            runPostHooks();
+                        }
+                    }
+            )).handle(new BiFunction<Void, Throwable, Object>() {
+                @Override
+                public Object apply(final Void value, final Throwable error) {
+                    if (error != null) {
+                        logPromotionFailure(job, StagedPipeline.unwrap(error));
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * The steps of the promotion of a single test.
+     */
+    private class Promotion extends PromotionSteps {
+        final String testName;
+        final String username;
+        final String password;
+        final Environment source;
+        final String srcRevision;
+        final Environment destination;
+        final String destRevision;
+        final Map<String, String[]> requestParameterMap;
+        final BackgroundJob job;
+        final boolean isAutopromote;
+
+        TestDefinition testDefinition;
+        PromoteAction action;
+        boolean success;
+
+        Promotion(final String testName,
+                  final String username,
+                  final String password,
+                  final Environment source,
+                  final String srcRevision,
+                  final Environment destination,
+                  final String destRevision,
+                  final Map<String, String[]> requestParameterMap,
+                  final BackgroundJob job,
+                  final boolean isAutopromote) {
+            this.testName = testName;
+            this.username = username;
+            this.password = password;
+            this.source = source;
+            this.srcRevision = srcRevision;
+            this.destination = destination;
+            this.destRevision = destRevision;
+            this.requestParameterMap = requestParameterMap;
+            this.job = job;
+            this.isAutopromote = isAutopromote;
+        }
+
+        @Override
+        void validate() {
+            validateUsernamePassword(username, password);
+
             final Map<Environment, PromoteAction> actions = PROMOTE_ACTIONS.get(source);
             if (actions == null || !actions.containsKey(destination)) {
                 throw new IllegalArgumentException("Invalid combination of source and destination: source=" + source + " dest=" + destination);
             }
-            final PromoteAction action = actions.get(destination);
+            action = actions.get(destination);
+
+            // TODO (parker) 9/5/12 - Verify that promoting to the destination branch won't cause issues
+            testDefinition = getTestDefinition(source, testName, srcRevision);
+            //            if(d == null) {
+            //                return "could not find " + testName + " on " + source + " with revision " + srcRevision;
+            //            }
+        }
 
+        @Override
+        void verify() {
+            final CheckMatrixResult result = checkMatrix(destination, testName, testDefinition);
+            if (!result.isValid()) {
+                throw new IllegalArgumentException(String.format("Test Promotion not compatible, errors: %s", Joiner.on("\n").join(result.getErrors())));
+            }
+        }
+
+        @Override
+        void commit() throws Exception {
             //PreDefinitionPromoteChanges
             job.log("Executing pre promote extension tasks.");
             for (final PreDefinitionPromoteChange preDefinitionPromoteChange: preDefinitionPromoteChanges) {
-                final DefinitionChangeLog definitionChangeLog = preDefinitionPromoteChange.prePromote(testDefintion, requestParameterMap, source, destination, isAutopromote);
+                final DefinitionChangeLog definitionChangeLog = preDefinitionPromoteChange.prePromote(testDefinition, requestParameterMap, source, destination, isAutopromote);
                 logDefinitionChangeLog(definitionChangeLog, preDefinitionPromoteChange.getClass().getSimpleName(), job);
             }
 
             //Promote Change
-            final boolean success = action.promoteTest(job, testName, srcRevision, destRevision, username, password, metadata);
+            success = action.promoteTest(job, testName, srcRevision, destRevision, username, password, Collections.<String, String>emptyMap());
+        }
 
+        @Override
+        void runPostHooks() {
             //PostDefinitionPromoteChanges
             job.log("Executing post promote extension tasks.");
             for (final PostDefinitionPromoteChange postDefinitionPromoteChange: postDefinitionPromoteChanges) {
@@ -595,7 +701,199 @@ public class ProctorTestDefinitionController extends AbstractController {
 
             job.log(String.format("Promoted %s from %s (%1.7s) to %s (%1.7s)", testName, source.getName(), srcRevision, destination.getName(), destRevision));
             job.addUrl("/proctor/definition/" + UtilityFunctions.urlEncode(testName) + "?branch=" + destination.getName(), "view " + testName + " on " + destination.getName());
-            return success;
+        }
+    }
+
+    /**
+     * Promotes several tests from the same source to the same destination in a single background job.
+     * The tests are verified together against the applications of the destination before any of them is promoted.
+     */
+    @RequestMapping(value = "/promote", method = RequestMethod.POST)
+    public View doPromoteAllPost(
+        @RequestParam(required = false) final String username,
+        @RequestParam(required = false) final String password,
+
+        @RequestParam(required = false) final String src,
+        @RequestParam(required = false) final String dest,
+        @RequestParam(value = "testName", required = false) final String[] testNames,
+        @RequestParam(value = "srcRevision", required = false) final String[] srcRevisions,
+        @RequestParam(value = "destRevision", required = false) final String[] destRevisions,
+        final HttpServletRequest request,
+        final HttpServletResponse response
+    ) {
+        final Environment source = determineEnvironmentFromParameter(src);
+        final Environment destination = determineEnvironmentFromParameter(dest);
+
+        if (testNames == null || testNames.length == 0
+                || srcRevisions == null || srcRevisions.length != testNames.length
+                || destRevisions == null || destRevisions.length != testNames.length) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            final String msg = "testName, srcRevision and destRevision must be given once for every promoted test";
+            return new JsonView(new JsonResponse<String>(msg, false, msg));
+        }
+        final List<ProctorPromoter.TestPromotion> promotions = Lists.newArrayListWithCapacity(testNames.length);
+        for (int i = 0; i < testNames.length; i++) {
+            promotions.add(new ProctorPromoter.TestPromotion(testNames[i], srcRevisions[i], Strings.nullToEmpty(destRevisions[i])));
+        }
+
+        final Map<String, String[]> requestParameterMap = new HashMap<String, String[]>();
+        requestParameterMap.putAll(request.getParameterMap());
+        final BackgroundJob job = doPromoteAllInternal(promotions, username, password, source, destination, requestParameterMap);
+        jobManager.submitAsync(job);
+
+        final JsonResponse<Map> jsonResponse = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
+        return new JsonView(jsonResponse);
+    }
+
+    private BackgroundJob doPromoteAllInternal(final List<ProctorPromoter.TestPromotion> promotions,
+                                               final String username,
+                                               final String password,
+                                               final Environment source,
+                                               final Environment destination,
+                                               final Map<String, String[]> requestParameterMap
+    ) {
+        return jobFactory.createAsyncBackgroundJob(
+                String.format("(%s) promoting %d tests from %s to %s", username, promotions.size(), source, destination),
+                BackgroundJob.JobType.TEST_PROMOTION,
+                new BackgroundJobFactory.AsyncExecutor<Object>() {
+                    @Override
+                    public CompletableFuture<Object> execute(final BackgroundJob job) {
+                        final BatchPromotion promotion = new BatchPromotion(promotions, username, password, source, destination, requestParameterMap, job);
+                        final List<String> testNames = Lists.newArrayListWithCapacity(promotions.size());
+                        for (final ProctorPromoter.TestPromotion testPromotion : promotions) {
+                            testNames.add(testPromotion.getTestName());
+                        }
+                        // ordered with the promotions of every test of the batch
+                        return promotion.submit(job, testNames);
+                    }
+                }
+        );
+    }
+
+    /**
+     * The steps of the promotion of several tests.
+     */
+    private class BatchPromotion extends PromotionSteps {
+        final List<ProctorPromoter.TestPromotion> promotions;
+        final String username;
+        final String password;
+        final Environment source;
+        final Environment destination;
+        final Map<String, String[]> requestParameterMap;
+        final BackgroundJob job;
+
+        final Map<String, TestDefinition> definitions = Maps.newLinkedHashMap();
+        // the request parameters of each test, as the extensions get them for the promotion of a single test
+        final Map<String, Map<String, String[]>> parameters = Maps.newHashMap();
+        // the tests committed by the commit step, and the exception that stopped it before the others
+        List<ProctorPromoter.TestPromotion> promoted = Collections.emptyList();
+        List<ProctorPromoter.TestPromotion> notPromoted = Collections.emptyList();
+        Exception commitFailure;
+
+        BatchPromotion(final List<ProctorPromoter.TestPromotion> promotions,
+                       final String username,
+                       final String password,
+                       final Environment source,
+                       final Environment destination,
+                       final Map<String, String[]> requestParameterMap,
+                       final BackgroundJob job) {
+            this.promotions = promotions;
+            this.username = username;
+            this.password = password;
+            this.source = source;
+            this.destination = destination;
+            this.requestParameterMap = requestParameterMap;
+            this.job = job;
+        }
+
+        @Override
+        void validate() {
+            validateUsernamePassword(username, password);
+
+            final Map<Environment, PromoteAction> actions = PROMOTE_ACTIONS.get(source);
+            if (actions == null || !actions.containsKey(destination)) {
+                throw new IllegalArgumentException("Invalid combination of source and destination: source=" + source + " dest=" + destination);
+            }
+
+            for (final ProctorPromoter.TestPromotion promotion : promotions) {
+                final TestDefinition definition = getTestDefinition(source, promotion.getTestName(), promotion.getSrcRevision());
+                if (definition == null) {
+                    throw new IllegalArgumentException("Could not find " + promotion.getTestName() + " on " + source + " with revision " + promotion.getSrcRevision());
+                }
+                if (definitions.put(promotion.getTestName(), definition) != null) {
+                    throw new IllegalArgumentException(promotion.getTestName() + " is promoted more than once");
+                }
+                final Map<String, String[]> testParameters = new HashMap<String, String[]>(requestParameterMap);
+                testParameters.put("testName", new String[] {promotion.getTestName()});
+                testParameters.put("srcRevision", new String[] {promotion.getSrcRevision()});
+                testParameters.put("destRevision", new String[] {promotion.getDestRevision()});
+                parameters.put(promotion.getTestName(), testParameters);
+            }
+        }
+
+        @Override
+        void verify() {
+            job.log(String.format("Verifying %d tests against the applications of %s", definitions.size(), destination.getName()));
+            final CheckMatrixResult result = checkMatrix(destination, definitions.keySet(), definitions);
+            if (!result.isValid()) {
+                throw new IllegalArgumentException(String.format("Test Promotion not compatible, errors: %s", Joiner.on("\n").join(result.getErrors())));
+            }
+        }
+
+        @Override
+        void commit() throws Exception {
+            //Promote Change
+            job.log(String.format("(scm) promote %s (%s to %s)", Joiner.on(", ").join(definitions.keySet()), source.getName(), destination.getName()));
+            try {
+                promoter.promoteAll(source, destination, promotions, username, password, Collections.<String, String>emptyMap(), new ProctorPromoter.BeforeCommit() {
+                    @Override
+                    public void beforeCommit(final ProctorPromoter.TestPromotion promotion) {
+                        //PreDefinitionPromoteChanges, only for the tests that are committed
+                        job.log("Executing pre promote extension tasks for " + promotion.getTestName() + ".");
+                        for (final PreDefinitionPromoteChange preDefinitionPromoteChange : preDefinitionPromoteChanges) {
+                            final DefinitionChangeLog definitionChangeLog = preDefinitionPromoteChange.prePromote(definitions.get(promotion.getTestName()), parameters.get(promotion.getTestName()), source, destination, false);
+                            logDefinitionChangeLog(definitionChangeLog, preDefinitionPromoteChange.getClass().getSimpleName(), job);
+                        }
+                    }
+                });
+                promoted = promotions;
+            } catch (final ProctorPromoter.PartialPromotionException e) {
+                // the tests already committed are promoted: their post promote steps still run before the job fails
+                job.log(e.getMessage());
+                promoted = e.getPromoted();
+                notPromoted = e.getNotPromoted();
+                commitFailure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        @Override
+        void runPostHooks() throws Exception {
+            if (!promoted.isEmpty()) {
+                runPostHooks(promoted);
+            }
+            if (commitFailure != null) {
+                if (!notPromoted.isEmpty()) {
+                    final List<String> testNames = Lists.newArrayListWithCapacity(notPromoted.size());
+                    for (final ProctorPromoter.TestPromotion promotion : notPromoted) {
+                        testNames.add(promotion.getTestName());
+                    }
+                    job.log(String.format("Not promoted to %s: %s", destination.getName(), Joiner.on(", ").join(testNames)));
+                }
+                throw commitFailure;
+            }
+        }
+
+        private void runPostHooks(final List<ProctorPromoter.TestPromotion> promoted) {
+            //PostDefinitionPromoteChanges
+            job.log("Executing post promote extension tasks.");
+            for (final ProctorPromoter.TestPromotion promotion : promoted) {
+                for (final PostDefinitionPromoteChange postDefinitionPromoteChange : postDefinitionPromoteChanges) {
+                    final DefinitionChangeLog definitionChangeLog = postDefinitionPromoteChange.postPromote(parameters.get(promotion.getTestName()), source, destination, false);
+                    logDefinitionChangeLog(definitionChangeLog, postDefinitionPromoteChange.getClass().getSimpleName(), job);
+                }
+                job.log(String.format("Promoted %s from %s (%1.7s) to %s (%1.7s)", promotion.getTestName(), source.getName(), promotion.getSrcRevision(), destination.getName(), promotion.getDestRevision()));
+                job.addUrl("/proctor/definition/" + UtilityFunctions.urlEncode(promotion.getTestName()) + "?branch=" + destination.getName(), "view " + promotion.getTestName() + " on " + destination.getName());
+            }
         }
     }
 
@@ -911,7 +1209,10 @@ public class ProctorTestDefinitionController extends AbstractController {
                                         && isAllocationOnlyChange(getTestDefinition(Environment.QA, testName, qaRevision), testDefinitionToUpdate);
                                 if (isQaPromotable) {
                                     job.log("auto-promoting changes to QA");
-                                    isQaPromoted = doJobIndependentPromoteInternal(testName, username, password, Environment.WORKING, trunkStore.getLatestVersion(), Environment.QA, qaRevision, requestParameterMap, job, true);
+                                    final Promotion qaPromotion = new Promotion(testName, username, password, Environment.WORKING, trunkStore.getLatestVersion(), Environment.QA, qaRevision, requestParameterMap, job, true);
+                                    // ordered with the other promotions of the test, a failure is logged to the job
+                                    qaPromotion.submit(job, ImmutableList.of(testName)).get();
+                                    isQaPromoted = qaPromotion.success;
                                 } else {
                                     isQaPromoted = false;
                                     job.log("previous revision changes prevented auto-promote to QA");
@@ -920,7 +1221,8 @@ public class ProctorTestDefinitionController extends AbstractController {
                                         && prodRevision != EnvironmentVersion.UNKNOWN_REVISION
                                         && isAllocationOnlyChange(getTestDefinition(Environment.PRODUCTION, testName, prodRevision), testDefinitionToUpdate)) {
                                     job.log("auto-promoting changes to PRODUCTION");
-                                    doJobIndependentPromoteInternal(testName, username, password, Environment.WORKING, trunkStore.getLatestVersion(), Environment.PRODUCTION, prodRevision, requestParameterMap, job, true);
+                                    final Promotion productionPromotion = new Promotion(testName, username, password, Environment.WORKING, trunkStore.getLatestVersion(), Environment.PRODUCTION, prodRevision, requestParameterMap, job, true);
+                                    productionPromotion.submit(job, ImmutableList.of(testName)).get();
 
                                 } else {
                                     job.log("previous revision changes prevented auto-promote to PRODUCTION");
@@ -1124,10 +1426,9 @@ public class ProctorTestDefinitionController extends AbstractController {
             @RequestParam(required = false) final String branch
     ) {
         final Environment theEnvironment = determineEnvironmentFromParameter(branch);
-        final ProctorStore store = determineStoreFromEnvironment(theEnvironment);
+        final CurrentMatrixCache.MatrixView matrixView = getCurrentMatrixView(theEnvironment);
 
-        final TestDefinition definition = getTestDefinition(store, testName);
-        if (definition == null) {
+        if (matrixView == null || !matrixView.getTestMatrixVersion().getTestMatrixDefinition().getTests().containsKey(testName)) {
             LOGGER.info("Unknown test definition : " + testName);
             // unknown testdefinition
             throw new NullPointerException("Unknown test definition");
@@ -1135,7 +1436,8 @@ public class ProctorTestDefinitionController extends AbstractController {
 
         JsonView view;
         try {
-            final TestSpecification specification = ProctorUtils.generateSpecification(definition);
+            // generated once per test and matrix revision
+            final TestSpecification specification = matrixView.getSpecification(testName);
             view = new JsonView(specification);
         } catch (IllegalArgumentException e) {
             LOGGER.error("Could not generate Test Specification", e);
@@ -1148,66 +1450,74 @@ public class ProctorTestDefinitionController extends AbstractController {
     private CheckMatrixResult checkMatrix(final Environment checkAgainst,
                                           final String testName,
                                           final TestDefinition potential) {
+        // The potential test definition will be null for test deletions
+        final Map<String, TestDefinition> potentials = potential != null
+                ? ImmutableMap.<String, TestDefinition>of(testName, potential)
+                : Collections.<String, TestDefinition>emptyMap();
+        return checkMatrix(checkAgainst, ImmutableSet.of(testName), potentials);
+    }
+
+    /**
+     * Verifies a single artifact containing all the potential test definitions against every application
+     * of the environment, each application being checked once for all the tests it requires among testNames.
+     */
+    private CheckMatrixResult checkMatrix(final Environment checkAgainst,
+                                          final Set<String> testNames,
+                                          final Map<String, TestDefinition> potentials) {
         final TestMatrixVersion tmv = new TestMatrixVersion();
         tmv.setAuthor("author");
         tmv.setVersion("");
-        tmv.setDescription("fake matrix for validation of " + testName);
+        tmv.setDescription("fake matrix for validation of " + Joiner.on(", ").join(testNames));
         tmv.setPublished(new Date());
 
         final TestMatrixDefinition tmd = new TestMatrixDefinition();
-        // The potential test definition will be null for test deletions
-        if (potential != null) {
-            tmd.setTests(ImmutableMap.<String, TestDefinition>of(testName, potential));
+        if (!potentials.isEmpty()) {
+            tmd.setTests(potentials);
         }
         tmv.setTestMatrixDefinition(tmd);
 
         final TestMatrixArtifact artifact = ProctorUtils.convertToConsumableArtifact(tmv);
         // Verify
-        final Map<AppVersion, Future<ProctorLoadResult>> futures = Maps.newLinkedHashMap();
+        final FanOut<AppVersion, ProctorLoadResult> fanOut = new FanOut<AppVersion, ProctorLoadResult>(verifierExecutor);
 
         final Map<AppVersion, ProctorSpecification> toVerify = specificationSource.loadAllSuccessfulSpecifications(checkAgainst);
         for (Map.Entry<AppVersion, ProctorSpecification> entry : toVerify.entrySet()) {
             final AppVersion appVersion = entry.getKey();
             final ProctorSpecification specification = entry.getValue();
-            futures.put(appVersion, verifierExecutor.submit(new Callable<ProctorLoadResult>() {
+            fanOut.submit(appVersion, new Callable<ProctorLoadResult>() {
                 @Override
                 public ProctorLoadResult call() throws Exception {
                     LOGGER.info("Verifying artifact against : cached " + appVersion);
-                    return verify(specification, artifact, testName, appVersion.toString());
+                    return verify(specification, artifact, testNames, appVersion.toString());
                 }
-            }));
+            });
 
         }
 
         final ImmutableList.Builder<String> errorsBuilder = ImmutableList.builder();
-        while (!futures.isEmpty()) {
-            try {
-                Thread.sleep(10);
-            } catch (final InterruptedException e) {
-                LOGGER.error("Oh heavens", e);
-            }
-            for (final Iterator<Map.Entry<AppVersion, Future<ProctorLoadResult>>> iterator = futures.entrySet().iterator(); iterator.hasNext(); ) {
-                final Map.Entry<AppVersion, Future<ProctorLoadResult>> entry = iterator.next();
-                final AppVersion version = entry.getKey();
-                final Future<ProctorLoadResult> future = entry.getValue();
-                if (future.isDone()) {
-                    iterator.remove();
-                    try {
-                        final ProctorLoadResult proctorLoadResult = future.get();
-                        if (proctorLoadResult.hasInvalidTests()) {
-                            errorsBuilder.add(getErrorMessage(version, proctorLoadResult));
-                        }
-                    } catch (final InterruptedException e) {
-                        errorsBuilder.add(version.toString() + " failed. " + e.getMessage());
-                        LOGGER.error("Interrupted getting " + version, e);
-                    } catch (final ExecutionException e) {
-                        final Throwable cause = e.getCause();
-                        errorsBuilder.add(version.toString() + " failed. " + cause.getMessage());
-                        LOGGER.error("Unable to verify " + version, cause);
+        fanOut.results(VERIFY_TASK_TIMEOUT_SECONDS, VERIFY_TIMEOUT_SECONDS, TimeUnit.SECONDS).forEach(result -> {
+            final AppVersion version = result.getKey();
+            switch (result.getStatus()) {
+                case SUCCESS:
+                    final ProctorLoadResult proctorLoadResult = result.getValue();
+                    if (proctorLoadResult.hasInvalidTests()) {
+                        errorsBuilder.add(getErrorMessage(version, proctorLoadResult));
                     }
-                }
+                    break;
+                case FAILED:
+                    errorsBuilder.add(version.toString() + " failed. " + result.getError().getMessage());
+                    LOGGER.error("Unable to verify " + version, result.getError());
+                    break;
+                case TIMED_OUT:
+                    errorsBuilder.add(version.toString() + " failed. Timed out verifying the test matrix");
+                    LOGGER.error("Timed out verifying " + version);
+                    break;
+                case CANCELLED:
+                    errorsBuilder.add(version.toString() + " failed. Verification was cancelled");
+                    LOGGER.error("Interrupted verifying " + version, result.getError());
+                    break;
             }
-        }
+        });
 
         final ImmutableList<String> errors = errorsBuilder.build();
         final boolean greatSuccess = errors.isEmpty();
@@ -1219,25 +1529,27 @@ public class ProctorTestDefinitionController extends AbstractController {
         final Map<String, IncompatibleTestMatrixException> testsWithErrors = proctorLoadResult.getTestErrorMap();
         final Set<String> missingTests = proctorLoadResult.getMissingTests();
 
-        // We expect at most one test to have a problem because we limited the verification to a single test
-        if (testsWithErrors.size() > 0) {
-            return testsWithErrors.values().iterator().next().getMessage();
-        } else if (missingTests.size() > 0) {
-            return String.format("%s requires test '%s'", appVersion, missingTests.iterator().next());
-        } else {
-            return "";
+        // The verification is limited to the checked tests, so there is one message per checked test at most
+        final List<String> messages = Lists.newArrayList();
+        for (final IncompatibleTestMatrixException exception : testsWithErrors.values()) {
+            messages.add(exception.getMessage());
+        }
+        for (final String missingTest : missingTests) {
+            messages.add(String.format("%s requires test '%s'", appVersion, missingTest));
         }
+        return Joiner.on("\n").join(messages);
     }
 
     private ProctorLoadResult verify(final ProctorSpecification spec,
                                      final TestMatrixArtifact testMatrix,
-                                     final String testName,
+                                     final Set<String> testNames,
                                      final String matrixSource) {
-        final Map<String, TestSpecification> requiredTests;
-        if (spec.getTests().containsKey(testName)) {
-            requiredTests = ImmutableMap.of(testName, spec.getTests().get(testName));
-        } else {
-            requiredTests = Collections.emptyMap();
+        final Map<String, TestSpecification> requiredTests = Maps.newHashMap();
+        for (final String testName : testNames) {
+            final TestSpecification testSpecification = spec.getTests().get(testName);
+            if (testSpecification != null) {
+                requiredTests.put(testName, testSpecification);
+            }
         }
         return ProctorUtils.verify(testMatrix, matrixSource, requiredTests);
     }
@@ -0,0 +1,84 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.indeed.proctor.webapp.RemoteProctorSpecificationSource;
+import com.indeed.proctor.webapp.db.Environment;
+import com.indeed.proctor.webapp.model.ProctorClientApplication;
+import com.indeed.proctor.webapp.model.RemoteSpecificationResult;
+import com.indeed.proctor.webapp.views.JsonView;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.View;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Lets client applications push their specification on startup or when it changes, instead of waiting
+ * for the next poll of RemoteProctorSpecificationSource.
+ *
+ * The request body is the same SpecificationResult json the application serves on /private/proctor/specification.
+ */
+@Controller
+@RequestMapping({ "/rpc/specification", "/proctor/rpc/specification" })
+public class SpecificationRegistrationController {
+    private static final Logger LOGGER = Logger.getLogger(SpecificationRegistrationController.class);
+
+    private final RemoteProctorSpecificationSource specificationSource;
+
+    @Autowired
+    public SpecificationRegistrationController(final RemoteProctorSpecificationSource specificationSource) {
+        this.specificationSource = specificationSource;
+    }
+
+    @RequestMapping(value = "/register", method = RequestMethod.POST)
+    public View doRegister(final HttpServletRequest request,
+                           final HttpServletResponse response,
+                           @RequestParam("environment") final String environmentName,
+                           @RequestParam("app") final String application,
+                           @RequestParam("version") final String version,
+                           @RequestParam("baseApplicationUrl") final String baseApplicationUrl,
+                           @RequestParam(value = "address", required = false) final String address) throws IOException {
+        final Environment environment = Environment.fromName(environmentName);
+        if (environment == null) {
+            return error(response, "Unknown environment " + environmentName);
+        }
+        if (isBlank(application) || isBlank(version) || isBlank(baseApplicationUrl)) {
+            return error(response, "app, version and baseApplicationUrl are required");
+        }
+        final ProctorClientApplication client = new ProctorClientApplication(
+                application,
+                baseApplicationUrl,
+                isBlank(address) ? request.getRemoteAddr() : address,
+                new Date(),
+                version);
+
+        final byte[] body = ByteStreams.toByteArray(request.getInputStream());
+        try {
+            final RemoteSpecificationResult result = specificationSource.register(environment, client, body);
+            return new JsonView(new JsonResponse<Integer>(result.getSpecificationResult().getSpecification().getTests().size(), true, "Registered " + result.getVersion()));
+        } catch (final IOException e) {
+            LOGGER.info("Unable to parse specification pushed by " + client, e);
+            return error(response, "Unable to parse specification: " + e.getMessage());
+        } catch (final IllegalArgumentException e) {
+            return error(response, e.getMessage());
+        }
+    }
+
+    private static View error(final HttpServletResponse response, final String msg) {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        return new JsonView(new JsonResponse<String>(msg, false, msg));
+    }
+
+    private static boolean isBlank(final String value) {
+        return CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(value));
+    }
+}
@@ -7,6 +7,7 @@ import com.indeed.proctor.common.model.TestMatrixVersion;
 import com.indeed.proctor.store.ProctorStore;
 import com.indeed.proctor.store.Revision;
 import com.indeed.proctor.store.StoreException;
+import com.indeed.proctor.webapp.CurrentMatrixCache;
 import com.indeed.proctor.webapp.db.Environment;
 import com.indeed.proctor.webapp.model.WebappConfiguration;
 import com.indeed.proctor.webapp.views.JsonView;
@@ -23,6 +24,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.servlet.View;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.util.List;
 
 @Controller
@@ -39,13 +42,28 @@ public class TestMatrixApiController extends AbstractController {
         super(configuration, trunkStore, qaStore, productionStore);
     }
 
+    /**
+     * Sent with an ETag: a poll with If-None-Match gets a 304 until the branch moves, and never for a revision
+     */
     @RequestMapping(value = "/{branchOrRevision}/matrix", method = RequestMethod.GET)
     public JsonView getTestMatrix(
-            @PathVariable final String branchOrRevision
-    ) throws StoreException {
+            @PathVariable final String branchOrRevision,
+            final HttpServletRequest request
+    ) throws StoreException, IOException {
+        final Environment branch = Environment.fromName(branchOrRevision);
+        if (branch != null) {
+            final CurrentMatrixCache.MatrixView view = getCurrentMatrixView(branch);
+            Preconditions.checkNotNull(view, String.format("Unable to load the current matrix of %s", branchOrRevision));
+            // serialized once per revision and kept with the view, a matrix is too large for the cache of JsonView
+            return new JsonView(view.getSerializedMatrix(), "matrix-" + branch.getName() + "-" + view.getRevision(), JsonView.CACHE_REVALIDATE);
+        }
+        final String version = "matrix-rev-" + branchOrRevision;
+        if (JsonView.isNotModified(request, version)) {
+            return JsonView.notModified(version, JsonView.CACHE_IMMUTABLE);
+        }
         final TestMatrixVersion testMatrixVersion = queryMatrixFromBranchOrRevision(branchOrRevision);
         Preconditions.checkNotNull(testMatrixVersion, String.format("Branch or revision %s not correct", branchOrRevision));
-        return new JsonView(testMatrixVersion);
+        return new JsonView(testMatrixVersion, version, JsonView.CACHE_IMMUTABLE);
     }
 
     @RequestMapping(value = "/{branch}/matrix/history", method = RequestMethod.GET)
@@ -59,15 +77,31 @@ public class TestMatrixApiController extends AbstractController {
         return new JsonView(queryMatrixHistory(environment, start, limit));
     }
 
+    /**
+     * Sent with an ETag: a poll with If-None-Match gets a 304 until the branch moves, and never for a revision
+     */
     @RequestMapping(value = "/{branchOrRevision}/definition/{testName}", method = RequestMethod.GET)
     public JsonView getTestDefinition(
             @PathVariable final String branchOrRevision,
-            @PathVariable final String testName
+            @PathVariable final String testName,
+            final HttpServletRequest request
     ) throws StoreException {
+        final Environment branch = Environment.fromName(branchOrRevision);
+        if (branch != null) {
+            final CurrentMatrixCache.MatrixView view = getCurrentMatrixView(branch);
+            Preconditions.checkNotNull(view, String.format("Unable to load the current matrix of %s", branchOrRevision));
+            final TestDefinition testDefinition = view.getTestMatrixVersion().getTestMatrixDefinition().getTests().get(testName);
+            Preconditions.checkNotNull(testDefinition, String.format("Test %s not found in %s", testName, branchOrRevision));
+            return new JsonView(testDefinition, "definition-" + branch.getName() + "-" + view.getRevision() + "-" + testName, JsonView.CACHE_REVALIDATE);
+        }
+        final String version = "definition-rev-" + branchOrRevision + "-" + testName;
+        if (JsonView.isNotModified(request, version)) {
+            return JsonView.notModified(version, JsonView.CACHE_IMMUTABLE);
+        }
         final TestDefinition testDefinition = queryTestDefinition(branchOrRevision, testName);
         Preconditions.checkNotNull(testDefinition,
                 String.format("Branch or revision %s not correct, or test %s not found", branchOrRevision, testName));
-        return new JsonView(testDefinition);
+        return new JsonView(testDefinition, version, JsonView.CACHE_IMMUTABLE);
     }
 
     @RequestMapping(value = "/{branchOrRevision}/definition/{testName}/history", method = RequestMethod.GET)
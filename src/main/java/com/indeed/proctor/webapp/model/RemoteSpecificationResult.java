@@ -50,6 +50,10 @@ public class RemoteSpecificationResult {
         return failures;
     }
 
+    public ProctorClientApplication getSkipped() {
+        return skipped;
+    }
+
     public List<ProctorClientApplication> getRemaining() {
         return remaining;
     }
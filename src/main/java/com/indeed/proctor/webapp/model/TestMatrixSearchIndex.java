@@ -0,0 +1,297 @@
+package com.indeed.proctor.webapp.model;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.store.Revision;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Lower cased search texts, active status and updated time of every test of a matrix revision,
+ * with the tests presorted by name and by updated time, so that the matrix list page can be
+ * filtered, sorted and paged on the server without walking the definitions for each request.
+ *
+ * Everything the list page derives from the matrix is computed here once per revision: rendering
+ * an unfiltered page only walks the presorted tests up to that page.
+ */
+public class TestMatrixSearchIndex {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Splitter QUERY_SPLITTER = Splitter.on(' ').omitEmptyStrings();
+    private static final Joiner SPACE_JOINER = Joiner.on(' ').skipNulls();
+    private static final long FALLBACK_UPDATED_TIME = 0L;
+
+    public static enum Field {
+        ALL("all"),
+        TEST_NAME("testName"),
+        DESCRIPTION("description"),
+        RULE("rule"),
+        BUCKET("bucket"),
+        BUCKET_DESCRIPTION("bucketDescription");
+
+        private final String name;
+        private Field(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Field fromName(final String name) {
+            for (final Field field : values()) {
+                if (field.name.equals(name)) {
+                    return field;
+                }
+            }
+            return ALL;
+        }
+    }
+
+    public static enum Status {
+        ALL("all"),
+        // some allocation splits its traffic between buckets
+        ACTIVE("active"),
+        // every allocation gives all its traffic to one bucket
+        INACTIVE("inactive");
+
+        private final String name;
+        private Status(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Status fromName(final String name) {
+            for (final Status status : values()) {
+                if (status.name.equals(name)) {
+                    return status;
+                }
+            }
+            return ALL;
+        }
+    }
+
+    public static enum Sort {
+        // favorites in the given order, then the other tests by name
+        FAVORITES("favorites"),
+        TEST_NAME("testName"),
+        // most recently updated first
+        UPDATED("updated");
+
+        private final String name;
+        private Sort(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Sort fromName(final String name) {
+            for (final Sort sort : values()) {
+                if (sort.name.equals(name)) {
+                    return sort;
+                }
+            }
+            return FAVORITES;
+        }
+    }
+
+    private final String revision;
+    private final Map<String, Entry> entries;
+    private final List<Entry> byName;
+    private final List<Entry> byUpdated;
+
+    private TestMatrixSearchIndex(final String revision, final Map<String, Entry> entries) {
+        this.revision = revision;
+        this.entries = entries;
+        final List<Entry> byName = Lists.newArrayList(entries.values());
+        Collections.sort(byName, BY_NAME);
+        this.byName = ImmutableList.copyOf(byName);
+        final List<Entry> byUpdated = Lists.newArrayList(byName);
+        Collections.sort(byUpdated, new Comparator<Entry>() {
+            @Override
+            public int compare(final Entry a, final Entry b) {
+                final int compare = Long.compare(b.updated, a.updated);
+                return compare != 0 ? compare : BY_NAME.compare(a, b);
+            }
+        });
+        this.byUpdated = ImmutableList.copyOf(byUpdated);
+    }
+
+    /**
+     * @param allHistories histories of the store the matrix was loaded from, newest revision first, to get the
+     *                     updated time of each test. Tests without history get an updated time of 0.
+     */
+    public static TestMatrixSearchIndex build(final String revision,
+                                              final TestMatrixDefinition testMatrixDefinition,
+                                              final Map<String, List<Revision>> allHistories) {
+        final Map<String, Entry> entries = Maps.newHashMap();
+        for (final Map.Entry<String, TestDefinition> test : testMatrixDefinition.getTests().entrySet()) {
+            final List<Revision> revisions = allHistories != null ? allHistories.get(test.getKey()) : null;
+            final long updated = (revisions == null || revisions.isEmpty() || revisions.get(0).getDate() == null)
+                    ? FALLBACK_UPDATED_TIME
+                    : revisions.get(0).getDate().getTime();
+            entries.put(test.getKey(), new Entry(test.getKey(), test.getValue(), updated));
+        }
+        return new TestMatrixSearchIndex(revision, entries);
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * Every whitespace separated word of the query must appear in the given field of a test for it to match,
+     * ignoring case.
+     *
+     * @param favorites test names to list first when sorting by favorites, most recent favorite first
+     * @param page 0 based, moved back into the range of pages of the matched tests
+     */
+    public TestMatrixSearchResult search(final String query,
+                                         final Field field,
+                                         final Status status,
+                                         final Sort sort,
+                                         final List<String> favorites,
+                                         final int page,
+                                         final int testsPerPage) {
+        final List<String> words = QUERY_SPLITTER.splitToList(Strings.nullToEmpty(query).toLowerCase(Locale.ENGLISH));
+        final Iterable<Entry> ordered;
+        if (sort == Sort.FAVORITES) {
+            final Set<String> favoriteNames = Sets.newLinkedHashSet();
+            for (final String favorite : favorites) {
+                if (entries.containsKey(favorite)) {
+                    favoriteNames.add(favorite);
+                }
+            }
+            ordered = Iterables.concat(
+                    Iterables.transform(favoriteNames, Functions.forMap(entries)),
+                    Iterables.filter(byName, new Predicate<Entry>() {
+                        @Override
+                        public boolean apply(final Entry entry) {
+                            return !favoriteNames.contains(entry.testName);
+                        }
+                    }));
+        } else {
+            ordered = sort == Sort.UPDATED ? byUpdated : byName;
+        }
+
+        // without filter, the count is known and only the entries up to the requested page are walked
+        final boolean unfiltered = words.isEmpty() && status == Status.ALL;
+        final Iterable<Entry> matched = unfiltered ? ordered : ImmutableList.copyOf(Iterables.filter(ordered, new Predicate<Entry>() {
+            @Override
+            public boolean apply(final Entry entry) {
+                return entry.matches(words, field, status);
+            }
+        }));
+        final int matchedCount = unfiltered ? entries.size() : Iterables.size(matched);
+
+        final int perPage = Math.max(1, testsPerPage);
+        final int pageCount = (matchedCount + perPage - 1) / perPage;
+        final int currentPage = Math.max(0, Math.min(page, pageCount - 1));
+        final List<TestMatrixSearchResult.Test> tests = Lists.newArrayList();
+        for (final Entry entry : Iterables.limit(Iterables.skip(matched, currentPage * perPage), perPage)) {
+            tests.add(entry.test);
+        }
+        return new TestMatrixSearchResult(revision, entries.size(), matchedCount, currentPage, perPage, tests);
+    }
+
+    private static final Comparator<Entry> BY_NAME = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry a, final Entry b) {
+            final int compare = a.lowerCaseName.compareTo(b.lowerCaseName);
+            return compare != 0 ? compare : a.testName.compareTo(b.testName);
+        }
+    };
+
+    private static class Entry {
+        private final String testName;
+        private final String lowerCaseName;
+        private final TestDefinition definition;
+        private final long updated;
+        private final TestMatrixSearchResult.Test test;
+        private final EnumMap<Field, String> texts = new EnumMap<Field, String>(Field.class);
+        private final boolean active;
+        private final boolean inactive;
+
+        private Entry(final String testName, final TestDefinition definition, final long updated) {
+            this.testName = testName;
+            this.lowerCaseName = testName.toLowerCase(Locale.ENGLISH);
+            this.definition = definition;
+            this.updated = updated;
+            this.test = new TestMatrixSearchResult.Test(testName, definition, updated);
+
+            final List<String> rules = Lists.newArrayList(definition.getRule());
+            final List<String> bucketNames = Lists.newArrayList();
+            final List<String> bucketDescriptions = Lists.newArrayList();
+            for (final TestBucket bucket : definition.getBuckets()) {
+                bucketNames.add(bucket.getName());
+                bucketDescriptions.add(bucket.getDescription());
+            }
+            boolean active = false;
+            boolean inactive = true;
+            for (final Allocation allocation : definition.getAllocations()) {
+                rules.add(allocation.getRule());
+                boolean split = true;
+                boolean single = false;
+                for (final Range range : allocation.getRanges()) {
+                    split &= range.getLength() < 1;
+                    single |= range.getLength() == 1;
+                }
+                active |= split;
+                inactive &= single;
+            }
+            this.active = active;
+            this.inactive = inactive;
+
+            texts.put(Field.TEST_NAME, normalize(testName));
+            texts.put(Field.DESCRIPTION, normalize(definition.getDescription()));
+            texts.put(Field.RULE, normalize(SPACE_JOINER.join(rules)));
+            texts.put(Field.BUCKET, normalize(SPACE_JOINER.join(bucketNames)));
+            texts.put(Field.BUCKET_DESCRIPTION, normalize(SPACE_JOINER.join(bucketDescriptions)));
+            texts.put(Field.ALL, SPACE_JOINER.join(
+                    SPACE_JOINER.join(texts.values()),
+                    normalize(definition.getTestType() != null ? definition.getTestType().name() : null),
+                    normalize(definition.getSalt())));
+        }
+
+        private boolean matches(final List<String> words, final Field field, final Status status) {
+            if ((status == Status.ACTIVE && !active) || (status == Status.INACTIVE && !inactive)) {
+                return false;
+            }
+            final String text = texts.get(field);
+            for (final String word : words) {
+                if (!text.contains(word)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String normalize(final String text) {
+            return WHITESPACE.matcher(Strings.nullToEmpty(text).toLowerCase(Locale.ENGLISH)).replaceAll(" ");
+        }
+    }
+}
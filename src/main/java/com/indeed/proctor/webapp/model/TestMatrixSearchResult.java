@@ -0,0 +1,95 @@
+package com.indeed.proctor.webapp.model;
+
+import com.indeed.proctor.common.model.TestDefinition;
+
+import java.util.List;
+
+/**
+ * One page of the tests of a matrix revision matching a search of the matrix list page
+ */
+public class TestMatrixSearchResult {
+    private final String revision;
+    private final int total;
+    private final int matched;
+    private final int page;
+    private final int testsPerPage;
+    private final List<Test> tests;
+
+    public TestMatrixSearchResult(final String revision,
+                                  final int total,
+                                  final int matched,
+                                  final int page,
+                                  final int testsPerPage,
+                                  final List<Test> tests) {
+        this.revision = revision;
+        this.total = total;
+        this.matched = matched;
+        this.page = page;
+        this.testsPerPage = testsPerPage;
+        this.tests = tests;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return number of tests in the matrix
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return number of tests matching the search, on all pages
+     */
+    public int getMatched() {
+        return matched;
+    }
+
+    /**
+     * @return 0 based index of the returned page
+     */
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageCount() {
+        return (matched + testsPerPage - 1) / testsPerPage;
+    }
+
+    public int getTestsPerPage() {
+        return testsPerPage;
+    }
+
+    public List<Test> getTests() {
+        return tests;
+    }
+
+    public static class Test {
+        private final String testName;
+        private final TestDefinition definition;
+        private final long updated;
+
+        public Test(final String testName, final TestDefinition definition, final long updated) {
+            this.testName = testName;
+            this.definition = definition;
+            this.updated = updated;
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        public TestDefinition getDefinition() {
+            return definition;
+        }
+
+        /**
+         * @return time of the latest revision of the test in milliseconds, 0 if unknown
+         */
+        public long getUpdated() {
+            return updated;
+        }
+    }
+}
@@ -15,19 +15,43 @@ public class WebappConfiguration {
     private final boolean useCompiledJavaScript;
     private final int verifyHttpTimeout;
     private final int verifyExecutorThreads;
+    private final int promotionStageThreads;
+    private final int promotionStageQueueCapacity;
+    private final int promoterLookupThreads;
+    private final int promoterLookupQueueCapacity;
+    private final long promoterLookupTimeout;
+    private final double promoterPrefetchRate;
 
     @SuppressWarnings({"SpringJavaAutowiringInspection"})
     @Autowired
     public WebappConfiguration(@Value("${use.compiled.css:true}") boolean useCompiledCSS,
                                @Value("${use.compiled.javascript:true}") boolean useCompiledJavaScript,
                                @Value("${verify.http.timeout:1000}") int verifyHttpTimeout,
-                               @Value("${verify.executor.threads:10}") int verifyExecutorThreads) {
+                               @Value("${verify.executor.threads:10}") int verifyExecutorThreads,
+                               @Value("${promotion.stage.threads:3}") int promotionStageThreads,
+                               @Value("${promotion.stage.queue.capacity:50}") int promotionStageQueueCapacity,
+                               @Value("${promoter.lookup.threads:3}") int promoterLookupThreads,
+                               @Value("${promoter.lookup.queue.capacity:30}") int promoterLookupQueueCapacity,
+                               @Value("${promoter.lookup.timeout:30000}") long promoterLookupTimeout,
+                               @Value("${promoter.prefetch.rate:2}") double promoterPrefetchRate) {
         this.useCompiledCSS = useCompiledCSS;
         this.useCompiledJavaScript = useCompiledJavaScript;
         this.verifyHttpTimeout = verifyHttpTimeout;
         this.verifyExecutorThreads = verifyExecutorThreads;
+        this.promotionStageThreads = promotionStageThreads;
+        this.promotionStageQueueCapacity = promotionStageQueueCapacity;
+        this.promoterLookupThreads = promoterLookupThreads;
+        this.promoterLookupQueueCapacity = promoterLookupQueueCapacity;
+        this.promoterLookupTimeout = promoterLookupTimeout;
+        this.promoterPrefetchRate = promoterPrefetchRate;
         Preconditions.checkArgument(verifyHttpTimeout > 0, "verifyHttpTimeout > 0");
         Preconditions.checkArgument(verifyExecutorThreads > 0, "verifyExecutorThreads > 0");
+        Preconditions.checkArgument(promotionStageThreads > 0, "promotionStageThreads > 0");
+        Preconditions.checkArgument(promotionStageQueueCapacity > 0, "promotionStageQueueCapacity > 0");
+        Preconditions.checkArgument(promoterLookupThreads > 0, "promoterLookupThreads > 0");
+        Preconditions.checkArgument(promoterLookupQueueCapacity > 0, "promoterLookupQueueCapacity > 0");
+        Preconditions.checkArgument(promoterLookupTimeout > 0, "promoterLookupTimeout > 0");
+        Preconditions.checkArgument(promoterPrefetchRate >= 0, "promoterPrefetchRate >= 0");
     }
 
     public boolean isUseCompiledCSS() {
@@ -45,4 +69,34 @@ public class WebappConfiguration {
     public int getVerifyExecutorThreads() {
         return verifyExecutorThreads;
     }
+
+    public int getPromotionStageThreads() {
+        return promotionStageThreads;
+    }
+
+    public int getPromotionStageQueueCapacity() {
+        return promotionStageQueueCapacity;
+    }
+
+    public int getPromoterLookupThreads() {
+        return promoterLookupThreads;
+    }
+
+    public int getPromoterLookupQueueCapacity() {
+        return promoterLookupQueueCapacity;
+    }
+
+    /**
+     * @return how long to wait for the history lookups of an EnvironmentVersion, in milliseconds
+     */
+    public long getPromoterLookupTimeout() {
+        return promoterLookupTimeout;
+    }
+
+    /**
+     * @return how many EnvironmentVersion entries to prefetch per second, 0 to disable prefetching
+     */
+    public double getPromoterPrefetchRate() {
+        return promoterPrefetchRate;
+    }
 }
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Strings;
 import com.indeed.proctor.common.EnvironmentVersion;
+import com.indeed.proctor.common.RevisionMetadata;
 import com.indeed.proctor.common.Serializers;
 import com.indeed.proctor.common.model.Allocation;
 import com.indeed.proctor.common.model.Range;
@@ -118,14 +119,12 @@ public final class TestDefinitionFunctions {
      */
     private static boolean isPromotedRevision(Revision history, Environment source, String revision) {
         // Look for <branch> rXXXX in the commit message
-        final String needle = String.format("%s r%s", source.getName(), revision);
-        return history.getMessage().contains(needle);
+        return RevisionMetadata.of(history).isPromotedFrom(source, revision);
     }
 
     private static boolean isCharmedRevision(Revision history, String revision) {
         // Look for "merged rXXXX: in the commit message
-        final String needle = String.format("merged r%s:", revision);
-        return history.getMessage().startsWith(needle);
+        return RevisionMetadata.of(history).isCharmedFrom(revision);
     }
 
 
@@ -0,0 +1,98 @@
+package com.indeed.proctor.webapp.util;
+
+import com.google.common.base.Preconditions;
+import com.indeed.util.varexport.Export;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in milliseconds, with power of two buckets (0, 1, 2-3, 4-7, ...).
+ *
+ * Percentiles are reported as the upper bound of the bucket they fall in, so they are at most twice the
+ * actual value. Export an instance with a prefix, e.g. {@code exporter.export(histogram, "commit-latency-")}.
+ */
+public class LatencyHistogram {
+    // the last bucket holds everything above 2^(BUCKETS - 2) ms (~18 hours)
+    private static final int BUCKETS = 28;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong total = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    public void record(final long millis) {
+        final long value = Math.max(0, millis);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public void recordSince(final long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000000L);
+    }
+
+    /**
+     * @return an upper bound of the given percentile of the recorded latencies, 0 if nothing was recorded
+     */
+    public long getPercentile(final double percentile) {
+        Preconditions.checkArgument(percentile > 0 && percentile <= 100, "0 < percentile <= 100");
+        final long[] snapshot = new long[BUCKETS];
+        long snapshotCount = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            snapshotCount += snapshot[i];
+        }
+        if (snapshotCount == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(percentile / 100 * snapshotCount);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Export(name = "count", doc = "Number of recorded latencies")
+    public long getCount() {
+        return count.get();
+    }
+
+    @Export(name = "mean-ms", doc = "Mean of the recorded latencies")
+    public long getMean() {
+        final long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    @Export(name = "p50-ms", doc = "Median of the recorded latencies (bucket upper bound)")
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    @Export(name = "p99-ms", doc = "99th percentile of the recorded latencies (bucket upper bound)")
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    @Export(name = "max-ms", doc = "Largest recorded latency")
+    public long getMax() {
+        return max.get();
+    }
+
+    private static int bucketOf(final long millis) {
+        // 0 -> 0, 1 -> 1, 2-3 -> 2, 4-7 -> 3, ...
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+    }
+
+    private static long upperBoundOf(final int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+}
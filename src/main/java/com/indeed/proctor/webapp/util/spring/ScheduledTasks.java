@@ -2,10 +2,13 @@ package com.indeed.proctor.webapp.util.spring;
 
 import com.indeed.util.varexport.VarExporter;
 import com.indeed.proctor.common.ProctorPromoter;
+import com.indeed.proctor.store.StoreException;
 import com.indeed.proctor.webapp.RemoteProctorSpecificationSource;
 import com.indeed.proctor.webapp.util.ThreadPoolExecutorVarExports;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.ScheduledExecutorService;
@@ -23,11 +26,26 @@ import java.util.concurrent.TimeUnit;
  */
 @Component
 public class ScheduledTasks implements InitializingBean {
+    private static final Logger LOGGER = Logger.getLogger(ScheduledTasks.class);
 
     private final ScheduledExecutorService scheduledExecutorService;
     private final RemoteProctorSpecificationSource proctorSpecificationSource;
 
-    // No longer used - only included to force instantiation of ProctorStores required for ProctorDependencyManager
+    // Clients can push their specifications, polling is then only a fallback and can run less often
+    @Value("${verify.refresh.interval.minutes:10}")
+    private long refreshIntervalMinutes;
+
+    // How often the stores are checked for new revisions to rebuild the bulk EnvironmentVersion table, 0 to disable it
+    @Value("${promoter.environment.versions.refresh.seconds:0}")
+    private long environmentVersionsRefreshSeconds;
+
+    // How often the stores are checked for commits to invalidate the affected EnvironmentVersions, 0 to disable.
+    // Promotions check their revisions against the last check first, with the watcher disabled they always
+    // query the histories of the tests.
+    @Value("${promoter.store.watch.seconds:60}")
+    private long storeWatchSeconds;
+
+    // Also forces instantiation of ProctorStores required for ProctorDependencyManager
     private final ProctorPromoter promoter;
 
     @Autowired
@@ -41,7 +59,31 @@ public class ScheduledTasks implements InitializingBean {
 
     @Override
     public void afterPropertiesSet() throws Exception {
-        scheduledExecutorService.scheduleWithFixedDelay(proctorSpecificationSource, 1, 10, TimeUnit.MINUTES);
+        scheduledExecutorService.scheduleWithFixedDelay(proctorSpecificationSource, 1, refreshIntervalMinutes, TimeUnit.MINUTES);
+        if (storeWatchSeconds > 0) {
+            scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        promoter.watchStores();
+                    } catch (final StoreException e) {
+                        LOGGER.error("Unable to check the stores for changes", e);
+                    }
+                }
+            }, 0, storeWatchSeconds, TimeUnit.SECONDS);
+        }
+        if (environmentVersionsRefreshSeconds > 0) {
+            scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        promoter.refreshEnvironmentVersions();
+                    } catch (final StoreException e) {
+                        LOGGER.error("Unable to refresh the EnvironmentVersion table", e);
+                    }
+                }
+            }, 0, environmentVersionsRefreshSeconds, TimeUnit.SECONDS);
+        }
 
         if(scheduledExecutorService instanceof ThreadPoolExecutor) {
             VarExporter.forNamespace(getClass().getSimpleName()).export(new ThreadPoolExecutorVarExports((ThreadPoolExecutor) scheduledExecutorService), "pool-");
@@ -0,0 +1,250 @@
+package com.indeed.proctor.webapp.util.threads;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Submits a batch of keyed tasks to an executor and hands back their results in completion order.
+ *
+ * Waiting is driven by a {@link CompletionService}, so the caller blocks until the next task finishes
+ * (or the next deadline passes) instead of polling every pending future.
+ *
+ * Tasks that run longer than the per-task timeout (measured from the moment they start executing) or
+ * that are still pending when the overall timeout expires are cancelled and reported as timed out.
+ *
+ * Instances are meant to be used once, from a single thread.
+ */
+public class FanOut<K, V> {
+    private final CompletionService<V> completionService;
+    private final Map<Future<V>, Task<K, V>> pending = Maps.newHashMap();
+    // Tasks in the order they started executing: the head always has the earliest per-task deadline
+    private final Queue<Task<K, V>> started = new ConcurrentLinkedQueue<Task<K, V>>();
+
+    public FanOut(final Executor executor) {
+        this.completionService = new ExecutorCompletionService<V>(executor);
+    }
+
+    public void submit(final K key, final Callable<V> callable) {
+        final Task<K, V> task = new Task<K, V>(key);
+        task.future = completionService.submit(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                task.startNanos = System.nanoTime();
+                started.add(task);
+                return callable.call();
+            }
+        });
+        pending.put(task.future, task);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns a lazy stream of the results of all submitted tasks, in completion order.
+     *
+     * If the calling thread is interrupted while waiting, all pending tasks are cancelled, reported as
+     * cancelled and the interrupt flag is restored.
+     *
+     * @param taskTimeout maximum time a single task may run once it started
+     * @param timeout maximum time to wait for all tasks, starting now
+     * @param unit unit of both timeouts
+     */
+    public Stream<Result<K, V>> results(final long taskTimeout, final long timeout, final TimeUnit unit) {
+        Preconditions.checkArgument(taskTimeout > 0, "taskTimeout > 0");
+        Preconditions.checkArgument(timeout >= 0, "timeout >= 0");
+        final Iterator<Result<K, V>> iterator = new ResultIterator(unit.toNanos(taskTimeout), System.nanoTime() + unit.toNanos(timeout));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false);
+    }
+
+    private class ResultIterator implements Iterator<Result<K, V>> {
+        private final long taskTimeoutNanos;
+        private final long deadlineNanos;
+        private final LinkedList<Result<K, V>> ready = Lists.newLinkedList();
+
+        private ResultIterator(final long taskTimeoutNanos, final long deadlineNanos) {
+            this.taskTimeoutNanos = taskTimeoutNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !ready.isEmpty() || !pending.isEmpty();
+        }
+
+        @Override
+        public Result<K, V> next() {
+            while (ready.isEmpty()) {
+                if (pending.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                awaitNext();
+            }
+            return ready.poll();
+        }
+
+        private void awaitNext() {
+            final long now = System.nanoTime();
+            if (now - deadlineNanos >= 0) {
+                expireAll(Status.TIMED_OUT, null);
+                return;
+            }
+
+            // Wake up no later than the overall deadline or the earliest per-task deadline.
+            // Tasks that start while we wait cannot expire before now + taskTimeout.
+            long wakeUp = Math.min(deadlineNanos - now, taskTimeoutNanos);
+            final Task<K, V> oldest = oldestRunning();
+            if (oldest != null) {
+                wakeUp = Math.min(wakeUp, oldest.startNanos + taskTimeoutNanos - now);
+            }
+
+            final Future<V> future;
+            try {
+                future = completionService.poll(Math.max(0, wakeUp), TimeUnit.NANOSECONDS);
+            } catch (final InterruptedException e) {
+                expireAll(Status.CANCELLED, e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (future != null) {
+                final Task<K, V> task = pending.remove(future);
+                if (task != null) {
+                    task.finished = true;
+                    ready.add(completed(task));
+                }
+            } else {
+                expireSlowTasks(System.nanoTime());
+            }
+        }
+
+        // @Nullable
+        private Task<K, V> oldestRunning() {
+            Task<K, V> head = started.peek();
+            while (head != null && head.finished) {
+                started.poll();
+                head = started.peek();
+            }
+            return head;
+        }
+
+        private void expireSlowTasks(final long now) {
+            Task<K, V> oldest = oldestRunning();
+            while (oldest != null && now - (oldest.startNanos + taskTimeoutNanos) >= 0) {
+                started.poll();
+                pending.remove(oldest.future);
+                ready.add(expire(oldest, Status.TIMED_OUT, null));
+                oldest = oldestRunning();
+            }
+        }
+
+        private void expireAll(final Status status, final Throwable error) {
+            for (final Task<K, V> task : pending.values()) {
+                ready.add(expire(task, status, error));
+            }
+            pending.clear();
+            started.clear();
+        }
+
+        private Result<K, V> expire(final Task<K, V> task, final Status status, final Throwable error) {
+            task.finished = true;
+            task.future.cancel(true);
+            return new Result<K, V>(task.key, status, null, error);
+        }
+
+        private Result<K, V> completed(final Task<K, V> task) {
+            try {
+                return new Result<K, V>(task.key, Status.SUCCESS, task.future.get(), null);
+            } catch (final ExecutionException e) {
+                return new Result<K, V>(task.key, Status.FAILED, null, e.getCause());
+            } catch (final InterruptedException e) {
+                // the future is already done, get() does not block
+                Thread.currentThread().interrupt();
+                return new Result<K, V>(task.key, Status.CANCELLED, null, e);
+            } catch (final CancellationException e) {
+                return new Result<K, V>(task.key, Status.CANCELLED, null, e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Task<K, V> {
+        final K key;
+        volatile Future<V> future;
+        volatile long startNanos;
+        // only accessed by the consuming thread
+        boolean finished = false;
+
+        private Task(final K key) {
+            this.key = key;
+        }
+    }
+
+    public enum Status {
+        SUCCESS,
+        FAILED,
+        TIMED_OUT,
+        CANCELLED
+    }
+
+    public static class Result<K, V> {
+        private final K key;
+        private final Status status;
+        private final V value;
+        private final Throwable error;
+
+        private Result(final K key, final Status status, final V value, final Throwable error) {
+            this.key = key;
+            this.status = status;
+            this.value = value;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+
+        // @Nullable - only set when the task succeeded
+        public V getValue() {
+            return value;
+        }
+
+        // @Nullable - the exception thrown by the task, or the InterruptedException / CancellationException that ended it
+        public Throwable getError() {
+            return error;
+        }
+    }
+}
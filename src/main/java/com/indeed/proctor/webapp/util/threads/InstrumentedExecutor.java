@@ -0,0 +1,83 @@
+package com.indeed.proctor.webapp.util.threads;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.proctor.webapp.util.LatencyHistogram;
+import com.indeed.proctor.webapp.util.ThreadPoolExecutorVarExports;
+import com.indeed.util.varexport.Export;
+import com.indeed.util.varexport.VarExporter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size executor with a bounded queue that rejects tasks when full instead of letting them pile up,
+ * and records how long tasks waited in the queue and how long they ran.
+ */
+public class InstrumentedExecutor {
+    private final ThreadPoolExecutor executor;
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    public InstrumentedExecutor(final String name, final int threads, final int queueCapacity) {
+        Preconditions.checkArgument(threads > 0, "threads > 0");
+        Preconditions.checkArgument(queueCapacity > 0, "queueCapacity > 0");
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactoryBuilder()
+                        .setNameFormat(name + "-Thread-%d")
+                        .setDaemon(true)
+                        .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                        .build(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @throws RejectedExecutionException if all threads are busy and the queue is full
+     */
+    public <T> Future<T> submit(final Callable<T> callable) throws RejectedExecutionException {
+        final long submitted = System.nanoTime();
+        try {
+            return executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    final long started = System.nanoTime();
+                    queueWait.record(TimeUnit.NANOSECONDS.toMillis(started - submitted));
+                    try {
+                        return callable.call();
+                    } finally {
+                        execution.recordSince(started);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Exports the pool stats, the rejections and both histograms with the given prefix
+     */
+    public void export(final VarExporter exporter, final String prefix) {
+        exporter.export(new ThreadPoolExecutorVarExports(executor), prefix + "pool-");
+        exporter.export(queueWait, prefix + "queue-wait-");
+        exporter.export(execution, prefix + "execution-");
+        exporter.export(this, prefix);
+    }
+
+    @Export(name = "rejected", doc = "Number of tasks rejected because all threads were busy and the queue was full")
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,187 @@
+package com.indeed.proctor.webapp.util.threads;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.proctor.webapp.util.LatencyHistogram;
+import com.indeed.proctor.webapp.util.ThreadPoolExecutorVarExports;
+import com.indeed.util.varexport.VarExporter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs operations made of a fixed sequence of steps, each step on the bounded executor of its stage.
+ *
+ * Operations on the same key run strictly one after the other: an operation starts its first stage
+ * once every previous operation on any of its keys completed (successfully or not). Operations on
+ * different keys flow through the stages in parallel. A step that throws fails the operation and its
+ * remaining steps are skipped.
+ *
+ * When the queue of the first stage is full, the operation fails with a {@link RejectedExecutionException},
+ * so that no step ever runs on the submitting thread. When the queue of a later stage is full, the step
+ * runs on the thread of the previous stage handing it over, which slows that stage down instead of
+ * queueing without bound.
+ *
+ * Queue depth, thread pool stats and the latency of each stage are exported under the given namespace,
+ * prefixed by the stage name.
+ */
+public class StagedPipeline<K> {
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    private final List<Stage> stages;
+    // completes when the last operation submitted for the key is done
+    private final Map<K, CompletableFuture<Void>> tails = new ConcurrentHashMap<K, CompletableFuture<Void>>();
+    // held while an operation replaces the tails of all its keys, see submit
+    private final Object tailsLock = new Object();
+
+    public StagedPipeline(final String name,
+                          final List<String> stageNames,
+                          final int threadsPerStage,
+                          final int queueCapacity) {
+        Preconditions.checkArgument(!stageNames.isEmpty(), "at least one stage");
+        Preconditions.checkArgument(threadsPerStage > 0, "threadsPerStage > 0");
+        Preconditions.checkArgument(queueCapacity > 0, "queueCapacity > 0");
+        final VarExporter exporter = VarExporter.forNamespace(name);
+        final ImmutableList.Builder<Stage> builder = ImmutableList.builder();
+        for (int i = 0; i < stageNames.size(); i++) {
+            final String stageName = stageNames.get(i);
+            // the first stage is handed its steps by the submitting thread, which must never run them
+            final Stage stage = new Stage(name + "-" + stageName, threadsPerStage, queueCapacity,
+                    i == 0 ? new RejectWhenFullPolicy(name, stageName) : new ThreadPoolExecutor.CallerRunsPolicy());
+            exporter.export(new ThreadPoolExecutorVarExports(stage.executor), stageName + "-pool-");
+            exporter.export(stage.latency, stageName + "-latency-");
+            builder.add(stage);
+        }
+        this.stages = builder.build();
+    }
+
+    /**
+     * @param keys the keys the operation must be ordered with
+     * @param steps one step per stage, in stage order
+     * @return completes when the last step ran, or exceptionally with the exception of the failed step,
+     *         or with a {@link RejectedExecutionException} when the first stage had no room for the operation
+     */
+    public CompletableFuture<Void> submit(final Collection<K> keys, final List<Step> steps) {
+        Preconditions.checkArgument(steps.size() == stages.size(), "one step per stage");
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        // a key given twice would otherwise wait for itself
+        final Set<K> uniqueKeys = ImmutableSet.copyOf(keys);
+        final CompletableFuture<?>[] previous = new CompletableFuture<?>[uniqueKeys.size()];
+        // Registering the keys one by one without the lock would let two operations sharing two keys each
+        // become the tail of one key and wait for the other on the second key, and both would never start.
+        synchronized (tailsLock) {
+            int i = 0;
+            for (final K key : uniqueKeys) {
+                final CompletableFuture<Void> tail = tails.put(key, done);
+                previous[i++] = tail != null ? tail : CompletableFuture.completedFuture(null);
+            }
+        }
+
+        CompletableFuture<Void> operation = CompletableFuture.allOf(previous);
+        for (int stage = 0; stage < stages.size(); stage++) {
+            operation = operation.thenRunAsync(stages.get(stage).wrap(steps.get(stage)), stages.get(stage).executor);
+        }
+        operation.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(final Void value, final Throwable error) {
+                for (final K key : uniqueKeys) {
+                    tails.remove(key, done);
+                }
+                // previous operations never fail, so the next operation on these keys starts whatever happened here
+                done.complete(null);
+            }
+        });
+        return operation;
+    }
+
+    public void shutdown() {
+        for (final Stage stage : stages) {
+            stage.executor.shutdown();
+        }
+    }
+
+    private static class Stage {
+        final ThreadPoolExecutor executor;
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Stage(final String name, final int threads, final int queueCapacity, final RejectedExecutionHandler rejectedExecutionHandler) {
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat(name + "-Thread-%d")
+                            .setDaemon(true)
+                            .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                            .build(),
+                    rejectedExecutionHandler);
+        }
+
+        Runnable wrap(final Step step) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    final long start = System.nanoTime();
+                    try {
+                        step.run();
+                    } catch (final RuntimeException e) {
+                        throw e;
+                    } catch (final Exception e) {
+                        throw new StepException(e);
+                    } finally {
+                        latency.recordSince(start);
+                    }
+                }
+            };
+        }
+    }
+
+    private static class RejectWhenFullPolicy implements RejectedExecutionHandler {
+        private final String pipelineName;
+        private final String stageName;
+
+        RejectWhenFullPolicy(final String pipelineName, final String stageName) {
+            this.pipelineName = pipelineName;
+            this.stageName = stageName;
+        }
+
+        @Override
+        public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+            throw new RejectedExecutionException(String.format("%s is busy: %d operations are already waiting for the %s stage, try again later",
+                    pipelineName, executor.getQueue().size(), stageName));
+        }
+    }
+
+    /**
+     * Wraps the checked exception thrown by a step, use {@link #unwrap(Throwable)} to get it back.
+     */
+    public static class StepException extends RuntimeException {
+        StepException(final Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * @return the exception thrown by the failed step, given the exception that completed an operation
+     */
+    public static Throwable unwrap(final Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof StepException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
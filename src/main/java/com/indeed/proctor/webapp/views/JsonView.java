@@ -1,25 +1,138 @@
 package com.indeed.proctor.webapp.views;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.indeed.proctor.common.Serializers;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import org.springframework.web.servlet.View;
 
+import java.io.IOException;
 import java.util.Map;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
+ * Writes compact JSON, or indented JSON when the request has pretty=true.
+ *
+ * Unversioned responses are streamed to the output stream of the response as they are serialized.
+ * Versioned responses are sent with an ETag, from bytes serialized ahead of the request or serialized once per
+ * version when they are small; pretty responses are never cached and streamed instead.
+ *
  * @author parker
  */
 public class JsonView implements View {
 
     private static final String CONTENT_TYPE = "application/json;charset=utf-8";
 
-    private static final ObjectWriter JSON_WRITER = Serializers.strict().writerWithDefaultPrettyPrinter();
+    /**
+     * For responses whose URL names a revision: their content never changes
+     */
+    public static final String CACHE_IMMUTABLE = "public, max-age=31536000";
+    /**
+     * For responses that follow the head of a branch: clients may keep them but must revalidate each time
+     */
+    public static final String CACHE_REVALIDATE = "no-cache";
+
+    private static final ObjectMapper OBJECT_MAPPER = Serializers.strict();
+    private static final Splitter ETAG_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final String GZIP_SUFFIX = "-gzip";
+    private static final String PRETTY_SUFFIX = "-pretty";
+    private static final String PRETTY_PARAMETER = "pretty";
+
+    // Serialized responses by version, so polling clients without a cached copy do not cost a serialization either.
+    // Only small responses such as test definitions are kept: the cache splits its weight over its segments and would
+    // evict a large one right away, large responses are kept with the data they are serialized from instead.
+    private static final int MAX_SERIALIZED_WEIGHT = 64 * 1024 * 1024;
+    private static final int MAX_CACHED_WEIGHT = 1024 * 1024;
+    private static final Cache<String, SerializedJson> SERIALIZED = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_SERIALIZED_WEIGHT)
+            .weigher(new Weigher<String, SerializedJson>() {
+                @Override
+                public int weigh(final String version, final SerializedJson json) {
+                    return json.getWeight();
+                }
+            })
+            .build();
+
     private final Object data;
+    // @Nullable - already serialized data
+    private final SerializedJson serialized;
+    // @Nullable
+    private final String version;
+    // @Nullable
+    private final String cacheControl;
+    private final boolean notModified;
 
     public JsonView(Object data) {
+        this(data, null, null, null, false);
+    }
+
+    /**
+     * @param version identifies the content of data, e.g. "matrix-" followed by the revision it was read at.
+     *                Sent as a strong ETag, requests with a matching If-None-Match get a 304 without body.
+     *                Responses with the same version must have the same content.
+     * @param cacheControl Cache-Control header value, {@link #CACHE_IMMUTABLE} or {@link #CACHE_REVALIDATE}
+     */
+    public JsonView(final Object data, final String version, @Nullable final String cacheControl) {
+        this(data, null, version, cacheControl, false);
+    }
+
+    /**
+     * Sends bytes serialized ahead of the request, e.g. kept with the data they were serialized from
+     *
+     * @see #JsonView(Object, String, String)
+     */
+    public JsonView(final SerializedJson serialized, final String version, @Nullable final String cacheControl) {
+        this(null, serialized, version, cacheControl, false);
+    }
+
+    private JsonView(final Object data,
+                     final SerializedJson serialized,
+                     final String version,
+                     final String cacheControl,
+                     final boolean notModified) {
         this.data = data;
+        this.serialized = serialized;
+        this.version = version;
+        this.cacheControl = cacheControl;
+        this.notModified = notModified;
+    }
+
+    /**
+     * A 304 for a request for which {@link #isNotModified} is true, to answer without loading the data
+     */
+    public static JsonView notModified(final String version, @Nullable final String cacheControl) {
+        return new JsonView(null, null, version, cacheControl, true);
+    }
+
+    /**
+     * @return true if the request has an If-None-Match header matching the given version
+     */
+    public static boolean isNotModified(final HttpServletRequest request, final String version) {
+        return getMatchingETag(request, version) != null;
+    }
+
+    // @Nullable - the ETag of the If-None-Match header of the request matching the given version
+    private static String getMatchingETag(final HttpServletRequest request, final String version) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        for (final String tag : ETAG_SPLITTER.split(ifNoneMatch)) {
+            final String strongTag = tag.startsWith("W/") ? tag.substring(2) : tag;
+            if ("*".equals(strongTag)
+                    || strongTag.equals(eTag(version, GZIP_SUFFIX))
+                    || strongTag.equals(eTag(version, PRETTY_SUFFIX))
+                    || strongTag.equals(eTag(version, ""))) {
+                return strongTag;
+            }
+        }
+        return null;
     }
 
     @Override
@@ -31,7 +144,92 @@ public class JsonView implements View {
     public void render(Map<String, ?> model,
                        HttpServletRequest request,
                        HttpServletResponse response) throws Exception {
+        final boolean pretty = isPrettyRequested(request);
+        if (version == null) {
+            stream(response, pretty);
+            return;
+        }
+
+        final boolean acceptsGzip = acceptsGzip(request);
+        if (cacheControl != null) {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+        response.setHeader("Vary", "Accept-Encoding");
+        final String matchingETag = getMatchingETag(request, version);
+        if (notModified || matchingETag != null) {
+            // the client keeps the encoding it has
+            response.setHeader("ETag", matchingETag != null && !"*".equals(matchingETag)
+                    ? matchingETag
+                    : eTag(version, pretty ? PRETTY_SUFFIX : acceptsGzip ? GZIP_SUFFIX : ""));
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (pretty) {
+            response.setHeader("ETag", eTag(version, PRETTY_SUFFIX));
+            stream(response, true);
+            return;
+        }
+
+        final SerializedJson json = serialized != null ? serialized : getSerialized();
+        final byte[] body;
+        if (acceptsGzip && json.getGzipBytes() != null) {
+            body = json.getGzipBytes();
+            response.setHeader("Content-Encoding", "gzip");
+            response.setHeader("ETag", eTag(version, GZIP_SUFFIX));
+        } else {
+            body = json.getBytes();
+            response.setHeader("ETag", eTag(version, ""));
+        }
+        response.setHeader("Content-Type", CONTENT_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private SerializedJson getSerialized() throws IOException {
+        final SerializedJson cached = SERIALIZED.getIfPresent(version);
+        if (cached != null) {
+            return cached;
+        }
+        final SerializedJson json = new SerializedJson(OBJECT_MAPPER.writeValueAsBytes(data));
+        if (json.getWeight() <= MAX_CACHED_WEIGHT) {
+            SERIALIZED.put(version, json);
+        }
+        return json;
+    }
+
+    // serializes straight to the output stream, without building the response in memory or encoding it through a Writer
+    private void stream(final HttpServletResponse response, final boolean pretty) throws IOException {
         response.setHeader("Content-Type", CONTENT_TYPE);
-        JSON_WRITER.writeValue(response.getWriter(), data);
+        if (serialized != null && !pretty) {
+            response.setContentLength(serialized.getBytes().length);
+            response.getOutputStream().write(serialized.getBytes());
+            return;
+        }
+        // serialized data is only parsed back to be indented, pretty responses are for humans
+        final Object value = serialized != null ? OBJECT_MAPPER.readTree(serialized.getBytes()) : data;
+        final JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        if (pretty) {
+            generator.useDefaultPrettyPrinter();
+        }
+        try {
+            OBJECT_MAPPER.writeValue(generator, value);
+        } finally {
+            generator.close();
+        }
+    }
+
+    private static boolean isPrettyRequested(final HttpServletRequest request) {
+        return "true".equals(request.getParameter(PRETTY_PARAMETER));
+    }
+
+    private static boolean acceptsGzip(final HttpServletRequest request) {
+        final String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    // all representations are matched by isNotModified, but a strong ETag must differ between them
+    private static String eTag(final String version, final String suffix) {
+        return '"' + version + suffix + '"';
     }
 }
@@ -0,0 +1,51 @@
+package com.indeed.proctor.webapp.views;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * UTF-8 bytes of a serialized JSON response and their gzip compression, computed once and sent as is
+ * to every client asking for the same content.
+ */
+public class SerializedJson {
+    // smaller responses are not worth compressing
+    private static final int MIN_GZIP_LENGTH = 1024;
+
+    private final byte[] bytes;
+    // @Nullable - null when not worth compressing
+    private final byte[] gzipBytes;
+
+    public SerializedJson(final byte[] bytes) {
+        this.bytes = bytes;
+        this.gzipBytes = bytes.length >= MIN_GZIP_LENGTH ? gzip(bytes) : null;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    // @Nullable
+    public byte[] getGzipBytes() {
+        return gzipBytes;
+    }
+
+    /**
+     * @return memory held by the serialized bytes
+     */
+    public int getWeight() {
+        return bytes.length + (gzipBytes != null ? gzipBytes.length : 0);
+    }
+
+    private static byte[] gzip(final byte[] bytes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try {
+            final GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(bytes);
+            gzip.close();
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to gzip in memory", e);
+        }
+        return out.toByteArray();
+    }
+}
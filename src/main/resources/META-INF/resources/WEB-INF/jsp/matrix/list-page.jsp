@@ -0,0 +1,6 @@
+<%@ page contentType="text/html;charset=UTF-8" language="java" trimDirectiveWhitespaces="true" %>
+<%@ taglib prefix="ui" tagdir="/WEB-INF/tags/ui" %>
+<%--@elvariable id="testMatrixVersion" type="com.indeed.proctor.webapp.TestMatrixVersion"--%>
+<%--@elvariable id="result" type="com.indeed.proctor.webapp.model.TestMatrixSearchResult"--%>
+<%--@elvariable id="branch" type="com.indeed.proctor.webapp.db.Environment"--%>
+<ui:matrix-list-page result="${result}" branch="${branch}" testMatrixVersion="${testMatrixVersion}"/>
@@ -11,7 +11,7 @@ indeed.proctor.filter.Favorites = function (testContainer) {
 
     var eventBus = new goog.pubsub.PubSub(true);
     this.model = new indeed.proctor.filter.Favorites.Model(eventBus);
-    new indeed.proctor.filter.Favorites.UI(testContainer, eventBus);
+    this.ui = new indeed.proctor.filter.Favorites.UI(testContainer, eventBus);
 
     this.model.refreshFavoriteTests();
 };
@@ -77,8 +77,7 @@ indeed.proctor.filter.Favorites.UI = function (testContainer, eventBus) {
     }
 
     indeed.proctor.filter.Favorites.UI.prototype.updateView = function (favoriteTests) {
-        goog.array.forEach(goog.dom.getChildren(testContainer), function (child) {
-            var favoriteToggle = child.querySelector(indeed.proctor.filter.Favorites.UI.FAVORITE_TOGGLE_SELECTOR);
+        goog.array.forEach(testContainer.querySelectorAll(indeed.proctor.filter.Favorites.UI.FAVORITE_TOGGLE_SELECTOR), function (favoriteToggle) {
             var testName = indeed.proctor.filter.Favorites.UI.getTestNameFromToggle(favoriteToggle);
             if (goog.array.contains(favoriteTests, testName)) {
                 indeed.proctor.filter.Favorites.UI.markAsFavorite(favoriteToggle);
@@ -90,38 +89,23 @@ indeed.proctor.filter.Favorites.UI = function (testContainer, eventBus) {
 
     this.eventBus.subscribe('ModelUpdated', this.updateView, this);
 
-    goog.array.forEach(goog.dom.getChildren(testContainer), function(child){
-        var favoriteToggle = child.querySelector(indeed.proctor.filter.Favorites.UI.FAVORITE_TOGGLE_SELECTOR);
-        goog.events.listen(favoriteToggle, goog.events.EventType.CLICK, function(){
-            var intentToMarkAsFavorite = indeed.proctor.filter.Favorites.UI.clickIntent(favoriteToggle);
-            var testName = indeed.proctor.filter.Favorites.UI.getTestNameFromToggle(favoriteToggle);
-            if(intentToMarkAsFavorite) {
-                eventBus.publish("MarkedFavorite", testName);
-            } else {
-                eventBus.publish("UnMarkedFavorite", testName);
-            }
-        });
+    // the tests of the container are replaced on each page, listen on the container itself
+    goog.events.listen(testContainer, goog.events.EventType.CLICK, function(e){
+        var favoriteToggle = e.target;
+        if (!goog.dom.classes.has(favoriteToggle, 'favorite')) {
+            return;
+        }
+        var intentToMarkAsFavorite = indeed.proctor.filter.Favorites.UI.clickIntent(favoriteToggle);
+        var testName = indeed.proctor.filter.Favorites.UI.getTestNameFromToggle(favoriteToggle);
+        if(intentToMarkAsFavorite) {
+            eventBus.publish("MarkedFavorite", testName);
+        } else {
+            eventBus.publish("UnMarkedFavorite", testName);
+        }
     });
 
 }
 
-/**
- * Returns the rank of the test based on how recently the test has been marked as favorite or not.
- * Tests that have been marked as favorite most recently would have the highest rank.
- * Tests which are not marked as favorite have rank of 0
- * @param testName name of the test to check
- */
-indeed.proctor.filter.Favorites.prototype.rankOf = function(testName) {
-    var favoriteTests = this.model.favoriteTests;
-    var index = favoriteTests.indexOf(testName);
-    var numberOfFavorites = favoriteTests.length;
-    if (index > -1) {
-        return numberOfFavorites - index;
-    } else {
-        return 0;
-    }
-};
-
 /**
  * Makes sure that favorites are freshly loaded from storage (cookie). This function is used to make sure
  * that the favorites are consistent between two instances of web app open in 2 browser tabs
@@ -131,6 +115,14 @@ indeed.proctor.filter.Favorites.prototype.refresh = function() {
     return this;
 };
 
+/**
+ * Marks the favorite tests among the tests currently in the container
+ */
+indeed.proctor.filter.Favorites.prototype.refreshView = function() {
+    this.ui.updateView(this.model.refreshFavoriteTests());
+    return this;
+};
+
 
 indeed.proctor.filter.Favorites.serializeToCookie = function (favoriteTests) {
     var serializedValue = favoriteTests.join(indeed.proctor.filter.Favorites.COOKIE_SEPARATOR);
@@ -1,29 +1,39 @@
 goog.provide("indeed.proctor.filter.Pager");
 
+goog.require('goog.net.XhrIo');
+goog.require('goog.uri.utils');
+goog.require('indeed.expandcollapse.ExpandCollapse');
+goog.require('indeed.proctor.filter.Favorites');
 goog.require('indeed.proctor.filter.Filter');
 goog.require('indeed.proctor.filter.Sorter');
 
 /**
- * Pager controller for handling which tests to show
- * @param matrix testMatrixDefinition object
+ * Pager controller for handling which tests to show. The server filters, sorts and pages the tests,
+ * the pager only fetches the page to show from /proctor/matrix/list/page.
  * @constructor
  */
-indeed.proctor.filter.Pager = function (matrix) {
+indeed.proctor.filter.Pager = function () {
   var filterContainer = goog.dom.getElement("filter-container");
-  var testContainer = goog.dom.getElement("test-container");
+  this.testContainer = goog.dom.getElement("test-container");
 
-  this.numMatchedNode = filterContainer.querySelector(".js-filter-num-matched");
   this.pagerControllers = goog.dom.getElementsByClass("pager-controller");
   this.pagerMessengers = goog.dom.getElementsByClass("pager-messenger");
-  this.testsPerPage = Number(testContainer.getAttribute("data-tests-per-page"));
-  this.models = this.createModels(matrix, testContainer);
+  this.testsPerPage = Number(this.testContainer.getAttribute("data-tests-per-page"));
+  this.branch = this.testContainer.getAttribute("data-branch");
+  // only the response of the latest request is shown
+  this.requestId = 0;
 
-  new indeed.proctor.filter.Filter(this.models, filterContainer, goog.bind(this.resetPage, this));
-  new indeed.proctor.filter.Sorter(this.models, filterContainer, testContainer, goog.bind(this.resetPage, this));
+  this.favorites = new indeed.proctor.filter.Favorites(this.testContainer);
+  this.filter = new indeed.proctor.filter.Filter(filterContainer, goog.bind(this.resetPage, this));
+  this.sorter = new indeed.proctor.filter.Sorter(filterContainer, goog.bind(this.resetPage, this));
 
-  this.currentPage = this.getPageFromFragment(0);
+  // the first page is rendered with the list
+  this.readPage();
   this.registerControllers(this.pagerControllers);
-  this.updatePager();
+  this.updateControllers();
+  if (this.getPageFromFragment(0) != this.currentPage) {
+    this.load(this.getPageFromFragment(0));
+  }
 };
 
 indeed.proctor.filter.Pager.PAGE_FRAGMENT_KEY = "page";
@@ -41,7 +51,10 @@ indeed.proctor.filter.Pager.prototype.registerControllers = function (pagerContr
   }, this);
 
   goog.events.listen(window, goog.events.EventType.HASHCHANGE, goog.bind(function () {
-    this.updatePager();
+    var page = this.getPageFromFragment(this.currentPage);
+    if (page != this.currentPage) {
+      this.load(page);
+    }
   }, this));
 };
 
@@ -50,9 +63,9 @@ indeed.proctor.filter.Pager.prototype.updateControllers = function () {
     var currentPageText = controller.querySelector(".pager-current-page");
     var pageNumText = controller.querySelector(".pager-page-num");
     goog.dom.setTextContent(currentPageText, this.currentPage + 1);
-    goog.dom.setTextContent(pageNumText, Math.ceil(this.getNumMatchedTest() / this.testsPerPage));
+    goog.dom.setTextContent(pageNumText, this.pageCount);
 
-    if (this.getNumMatchedTest() <= this.testsPerPage) {
+    if (this.numMatched <= this.testsPerPage) {
       controller.style.display = "none";
     } else {
       controller.style.display = "";
@@ -74,55 +87,60 @@ indeed.proctor.filter.Pager.prototype.updateControllers = function () {
 
   goog.array.forEach(this.pagerMessengers, function (messenger) {
     var noResultMessage = messenger.querySelector(".pager-message-no-result");
-    noResultMessage.style.display = (this.getNumMatchedTest() == 0) ? "" : "none";
+    noResultMessage.style.display = (this.numMatched == 0) ? "" : "none";
   }, this);
 };
 
 /**
- * This refreshes the showing tests and pager controllers according to the given page.
+ * Fetches the given page of the tests matching the filter and replaces the shown tests with it.
+ * @param page 0 based page number
  */
-indeed.proctor.filter.Pager.prototype.updatePager = function () {
-  var oldPage = this.currentPage;
-  this.currentPage = this.adjustPage(this.getPageFromFragment(this.currentPage));
-  var matched = 0;
-  goog.array.forEach(this.models, function (model) {
-    model.dom.style.display = "none";
-    if (!model.excluded) {
-      if (this.insideOfThePageRange(matched, this.currentPage, this.testsPerPage)) {
-        model.dom.style.display = "";
-      }
-      matched++;
-    }
-  }, this);
-
-  this.updateControllers();
-  if (oldPage != this.currentPage) {
-    this.scrollToTop();
-  }
+indeed.proctor.filter.Pager.prototype.load = function (page) {
+  var requestId = ++this.requestId;
+  var parameters = this.filter.getParameters();
+  parameters['sort'] = this.sorter.getSort();
+  parameters['branch'] = this.branch;
+  parameters['page'] = page;
+  parameters['testsPerPage'] = this.testsPerPage;
+  goog.net.XhrIo.send(
+      goog.uri.utils.appendParamsFromMap('/proctor/matrix/list/page', parameters),
+      goog.bind(function (e) {
+        var xhr = /** goog.net.XhrIo */ e.target;
+        if (requestId != this.requestId || !xhr.isSuccess()) {
+          return;
+        }
+        var oldPage = this.currentPage;
+        this.testContainer.innerHTML = xhr.getResponseText();
+        this.readPage();
+        indeed.expandcollapse.ExpandCollapse.detect(this.testContainer);
+        this.favorites.refreshView();
+        this.updateControllers();
+        if (this.getPageFromFragment(0) != this.currentPage) {
+          this.setPage(this.currentPage);
+        }
+        if (oldPage != this.currentPage) {
+          this.scrollToTop();
+        }
+      }, this),
+      'GET',
+      undefined,
+      {'X-Requested-With': 'XMLHttpRequest'}
+  );
 };
 
 /**
- * return how many number of tests are enabled by filter.
- * @returns {number}
+ * Reads the counts of the page currently in the test container
  */
-indeed.proctor.filter.Pager.prototype.getNumMatchedTest = function () {
-  return Number(goog.dom.getTextContent(this.numMatchedNode));
+indeed.proctor.filter.Pager.prototype.readPage = function () {
+  var page = this.testContainer.querySelector(".js-matrix-page");
+  this.currentPage = Number(page.getAttribute("data-page"));
+  this.pageCount = Number(page.getAttribute("data-page-count"));
+  this.numMatched = Number(page.getAttribute("data-matched"));
+  this.filter.setCounts(this.numMatched, page.getAttribute("data-total"));
 };
 
 indeed.proctor.filter.Pager.prototype.resetPage = function () {
-  this.setPage(0);
-  this.updatePager();
-};
-
-/**
- * check that given index is inside the range of given page
- * @param i index of the test
- * @param page current page number
- * @param testsPerPage
- * @returns {boolean}
- */
-indeed.proctor.filter.Pager.prototype.insideOfThePageRange = function (i, page, testsPerPage) {
-  return testsPerPage * page <= i && i < testsPerPage * (page + 1);
+  this.load(0);
 };
 
 indeed.proctor.filter.Pager.prototype.scrollToTop = function () {
@@ -134,7 +152,7 @@ indeed.proctor.filter.Pager.prototype.getPageFromFragment = function (defaultVal
   if (hash && hash[0] == '#') {
     hash = hash.substring(1);
   }
-  return this.adjustPage((hash && !isNaN(hash)) ? Number(hash) - 1 : defaultValue);
+  return Math.max(0, (hash && !isNaN(hash)) ? Number(hash) - 1 : defaultValue);
 };
 
 indeed.proctor.filter.Pager.prototype.setPage = function (page) {
@@ -147,18 +165,5 @@ indeed.proctor.filter.Pager.prototype.setPage = function (page) {
  * @returns {number}
  */
 indeed.proctor.filter.Pager.prototype.adjustPage = function (page) {
-  return Math.max(0, Math.min(page, Math.ceil(this.getNumMatchedTest() / this.testsPerPage) - 1));
+  return Math.max(0, Math.min(page, this.pageCount - 1));
 };
-
-indeed.proctor.filter.Pager.prototype.createModels = function (matrix, testContainer) {
-  return goog.array.map(testContainer.querySelectorAll('.ui-test-definition'), function (testDefinitionNode) {
-    var testName = goog.dom.getTextContent(testDefinitionNode.querySelector(".mtn"));
-    var definition = matrix.tests[testName];
-    return {
-      testName: testName,
-      definition: definition,
-      dom: testDefinitionNode.parentNode,
-      excluded: false // used for Filter
-    };
-  });
-};
\ No newline at end of file
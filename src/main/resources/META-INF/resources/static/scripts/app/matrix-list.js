@@ -19,7 +19,7 @@ goog.require('indeed.proctor.filter.Pager');
 /**
  * entry point for the matrix.list
  */
-indeed.proctor.app.matrix.list.start = function(matrix) {
+indeed.proctor.app.matrix.list.start = function() {
   goog.events.listen(window, 'load', function() {
     indeed.expandcollapse.ExpandCollapse.detect(document.body);
 
@@ -27,7 +27,7 @@ indeed.proctor.app.matrix.list.start = function(matrix) {
     goog.array.forEach(tabs, function(tab) {
       var uiTab = new indeed.foundation.Tabs(tab);
     });
-    new indeed.proctor.filter.Pager(matrix);
+    new indeed.proctor.filter.Pager();
   });
 };
 
@@ -0,0 +1,81 @@
+package com.indeed.proctor.common;
+
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.webapp.db.Environment;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+/**
+ * Tests for {@link RevisionMetadata}
+ */
+public class TestRevisionMetadata {
+
+    @Test
+    public void testPromotedFromMatchesWholeRevision() {
+        final RevisionMetadata metadata = RevisionMetadata.parse("Promoting example (trunk r123) to qa");
+        Assert.assertTrue(metadata.isPromotedFrom(Environment.WORKING, "123"));
+        // a prefix or a suffix of the referenced revision is a different revision
+        Assert.assertFalse(metadata.isPromotedFrom(Environment.WORKING, "12"));
+        Assert.assertFalse(metadata.isPromotedFrom(Environment.WORKING, "23"));
+        Assert.assertFalse(metadata.isPromotedFrom(Environment.QA, "123"));
+    }
+
+    @Test
+    public void testPromotedFromEveryQuotedPromotion() {
+        final RevisionMetadata metadata = RevisionMetadata.parse("Promoting example (qa r135) to production\nPromoting example (trunk r134) to qa");
+        Assert.assertTrue(metadata.isPromotedFrom(Environment.QA, "135"));
+        Assert.assertTrue(metadata.isPromotedFrom(Environment.WORKING, "134"));
+        Assert.assertFalse(metadata.isPromotedFrom(Environment.WORKING, "135"));
+        Assert.assertFalse(metadata.isPromotedFrom(Environment.PRODUCTION, "135"));
+    }
+
+    @Test
+    public void testPromotedFromGitRevision() {
+        final RevisionMetadata metadata = RevisionMetadata.parse("Promoting example (trunk r3f2a9c) to qa");
+        Assert.assertTrue(metadata.isPromotedFrom(Environment.WORKING, "3f2a9c"));
+        Assert.assertFalse(metadata.isPromotedFrom(Environment.WORKING, "3f2a9"));
+    }
+
+    @Test
+    public void testCharmedFromGitRevision() {
+        final RevisionMetadata metadata = RevisionMetadata.parse("merged r3f2a9c: Promoting example (trunk r1b7e4d) to qa");
+        Assert.assertTrue(metadata.isCharmedFrom("3f2a9c"));
+        Assert.assertFalse(metadata.isCharmedFrom("3f2a9"));
+        Assert.assertEquals("3f2a9c", metadata.getCharmedRevision());
+    }
+
+    @Test
+    public void testCharmedFrom() {
+        final RevisionMetadata metadata = RevisionMetadata.parse("merged r1234: Promoting example (trunk r1200) to qa");
+        Assert.assertTrue(metadata.isCharmedFrom("1234"));
+        Assert.assertFalse(metadata.isCharmedFrom("123"));
+        Assert.assertEquals("1234", metadata.getCharmedRevision());
+        Assert.assertTrue(metadata.isPromotedFrom(Environment.WORKING, "1200"));
+    }
+
+    @Test
+    public void testCharmedOnLaterLine() {
+        // the effective revision is still found, but only a message starting with the merge is a charm of it
+        final RevisionMetadata metadata = RevisionMetadata.parse("Promoting example to qa\nmerged r1234: fix allocation");
+        Assert.assertEquals("1234", metadata.getCharmedRevision());
+        Assert.assertFalse(metadata.isCharmedFrom("1234"));
+    }
+
+    @Test
+    public void testPlainMessage() {
+        final RevisionMetadata metadata = RevisionMetadata.parse("INDAPPW-537: Adjusting test ratio allocations");
+        Assert.assertNull(metadata.getCharmedRevision());
+        Assert.assertFalse(metadata.isCharmedFrom("537"));
+        Assert.assertFalse(metadata.isPromotedFrom(Environment.WORKING, "537"));
+    }
+
+    @Test
+    public void testOfRevision() {
+        final Revision revision = new Revision("136", "developer-A", new Date(), "Promoting example (trunk r134) to qa");
+        Assert.assertTrue(RevisionMetadata.of(revision).isPromotedFrom(Environment.WORKING, "134"));
+        Assert.assertSame(RevisionMetadata.of(revision), RevisionMetadata.of(revision));
+        Assert.assertFalse(RevisionMetadata.of(null).isPromotedFrom(Environment.WORKING, "134"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.indeed.proctor.webapp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.common.Serializers;
+import com.indeed.proctor.common.SpecificationResult;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the retained heap of the specifications of a large fleet when parsed with
+ * ObjectMapper.readValue and with {@link SpecificationParser}.
+ *
+ * Simulates 3,000 AppVersions, each using 150 tests out of 500 with 2-5 buckets and a description.
+ * Not run as part of the test suite, run the main method manually (ideally with -Xmx1g and no other load).
+ */
+public class SpecificationFootprintBenchmark {
+    private static final int APP_VERSIONS = 3000;
+    private static final int TESTS = 500;
+    private static final int TESTS_PER_APP = 150;
+
+    public static void main(final String[] args) throws Exception {
+        final ObjectMapper objectMapper = Serializers.strict();
+        final SpecificationParser parser = new SpecificationParser(objectMapper);
+        final List<byte[]> bodies = generateBodies();
+
+        final long baseline = usedHeap();
+        final List<SpecificationResult> mapped = Lists.newArrayListWithCapacity(bodies.size());
+        for (final byte[] body : bodies) {
+            mapped.add(objectMapper.readValue(body, SpecificationResult.class));
+        }
+        final long mappedBytes = usedHeap() - baseline;
+        mapped.clear();
+
+        final long streamingBaseline = usedHeap();
+        final List<SpecificationResult> streamed = Lists.newArrayListWithCapacity(bodies.size());
+        for (final byte[] body : bodies) {
+            streamed.add(parser.parse(body));
+        }
+        final long streamedBytes = usedHeap() - streamingBaseline;
+
+        System.out.printf("%d app versions: ObjectMapper %d KB, SpecificationParser %d KB (%d specifications retained)%n",
+                APP_VERSIONS, mappedBytes / 1024, streamedBytes / 1024, streamed.size());
+    }
+
+    private static List<byte[]> generateBodies() {
+        final Random random = new Random(0);
+        final List<byte[]> bodies = Lists.newArrayListWithCapacity(APP_VERSIONS);
+        for (int app = 0; app < APP_VERSIONS; app++) {
+            final StringBuilder json = new StringBuilder("{\"specification\":{\"providedContext\":{\"country\":\"String\",\"loggedIn\":\"boolean\"},\"tests\":{");
+            // distinct tests per app: TESTS_PER_APP consecutive tests starting at a random offset
+            final int offset = random.nextInt(TESTS);
+            for (int i = 0; i < TESTS_PER_APP; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                final int test = (offset + i) % TESTS;
+                json.append("\"example_test_").append(test).append("\":{\"fallbackValue\":-1,\"description\":\"Description of test ")
+                        .append(test).append(" as declared by the application\",\"buckets\":{\"inactive\":-1,\"control\":0");
+                final int buckets = 2 + random.nextInt(4);
+                for (int bucket = 1; bucket < buckets; bucket++) {
+                    json.append(",\"test").append(bucket).append("\":").append(bucket);
+                }
+                json.append("}}");
+            }
+            json.append("}},\"error\":null,\"exception\":null}");
+            bodies.add(json.toString().getBytes(Charsets.UTF_8));
+        }
+        return bodies;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,112 @@
+package com.indeed.proctor.webapp.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.indeed.proctor.common.EnvironmentVersion;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestType;
+import com.indeed.proctor.store.Revision;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link TestMatrixSearchIndex}
+ */
+public class TestTestMatrixSearchIndex {
+    private static final List<String> NO_FAVORITES = Collections.emptyList();
+
+    private final TestMatrixSearchIndex index = TestMatrixSearchIndex.build("10", createMatrix(), ImmutableMap.<String, List<Revision>>of(
+            "alpha", ImmutableList.of(revision("3", 3000)),
+            "Beta", ImmutableList.of(revision("9", 9000), revision("1", 1000)),
+            "gamma", ImmutableList.of(revision("5", 5000))));
+
+    @Test
+    public void testFilterByField() {
+        Assert.assertEquals(ImmutableList.of("alpha", "gamma"), search("control", TestMatrixSearchIndex.Field.BUCKET, TestMatrixSearchIndex.Status.ALL));
+        Assert.assertEquals(ImmutableList.of("Beta"), search("Country  US", TestMatrixSearchIndex.Field.RULE, TestMatrixSearchIndex.Status.ALL));
+        Assert.assertEquals(ImmutableList.of("Beta"), search("beta", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL));
+        Assert.assertEquals(ImmutableList.of(), search("beta", TestMatrixSearchIndex.Field.DESCRIPTION, TestMatrixSearchIndex.Status.ALL));
+    }
+
+    @Test
+    public void testFilterByStatus() {
+        Assert.assertEquals(ImmutableList.of("alpha", "gamma"), search("", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ACTIVE));
+        Assert.assertEquals(ImmutableList.of("Beta"), search("", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.INACTIVE));
+    }
+
+    @Test
+    public void testSort() {
+        Assert.assertEquals(ImmutableList.of("Beta", "gamma", "alpha"),
+                names(index.search("", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL, TestMatrixSearchIndex.Sort.UPDATED, NO_FAVORITES, 0, 10)));
+        Assert.assertEquals(ImmutableList.of("gamma", "alpha", "Beta"),
+                names(index.search("", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL, TestMatrixSearchIndex.Sort.FAVORITES, ImmutableList.of("gamma", "missing"), 0, 10)));
+        Assert.assertEquals(ImmutableList.of("Beta"),
+                names(index.search("", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL, TestMatrixSearchIndex.Sort.FAVORITES, ImmutableList.of("gamma", "missing"), 1, 2)));
+        Assert.assertEquals(ImmutableList.of("gamma", "alpha"),
+                names(index.search("m", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL, TestMatrixSearchIndex.Sort.FAVORITES, ImmutableList.of("gamma", "missing"), 0, 2)));
+    }
+
+    @Test
+    public void testPaging() {
+        final TestMatrixSearchResult second = index.search("", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL, TestMatrixSearchIndex.Sort.TEST_NAME, NO_FAVORITES, 1, 2);
+        Assert.assertEquals(ImmutableList.of("gamma"), names(second));
+        Assert.assertEquals(3, second.getTotal());
+        Assert.assertEquals(3, second.getMatched());
+        Assert.assertEquals(2, second.getPageCount());
+        Assert.assertEquals(9000, index.search("beta", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL, TestMatrixSearchIndex.Sort.TEST_NAME, NO_FAVORITES, 0, 2).getTests().get(0).getUpdated());
+
+        // out of range pages are moved back to the last page
+        Assert.assertEquals(1, index.search("", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL, TestMatrixSearchIndex.Sort.TEST_NAME, NO_FAVORITES, 5, 2).getPage());
+        final TestMatrixSearchResult none = index.search("nothing", TestMatrixSearchIndex.Field.ALL, TestMatrixSearchIndex.Status.ALL, TestMatrixSearchIndex.Sort.TEST_NAME, NO_FAVORITES, 3, 2);
+        Assert.assertEquals(0, none.getPage());
+        Assert.assertEquals(0, none.getMatched());
+        Assert.assertTrue(none.getTests().isEmpty());
+    }
+
+    private List<String> search(final String query, final TestMatrixSearchIndex.Field field, final TestMatrixSearchIndex.Status status) {
+        return names(index.search(query, field, status, TestMatrixSearchIndex.Sort.TEST_NAME, NO_FAVORITES, 0, 10));
+    }
+
+    private static List<String> names(final TestMatrixSearchResult result) {
+        final ImmutableList.Builder<String> names = ImmutableList.builder();
+        for (final TestMatrixSearchResult.Test test : result.getTests()) {
+            names.add(test.getTestName());
+        }
+        return names.build();
+    }
+
+    private static TestMatrixDefinition createMatrix() {
+        final TestMatrixDefinition matrix = new TestMatrixDefinition();
+        matrix.setTests(ImmutableMap.of(
+                "alpha", createDefinition("first experiment", null, 0.5, "control", "test"),
+                "Beta", createDefinition("second experiment", "country == 'US'", 1, "inactive", "active"),
+                "gamma", createDefinition("third experiment", null, 0.25, "control", "test")));
+        return matrix;
+    }
+
+    private static TestDefinition createDefinition(final String description,
+                                                   final String allocationRule,
+                                                   final double firstLength,
+                                                   final String firstBucket,
+                                                   final String secondBucket) {
+        final List<TestBucket> buckets = ImmutableList.of(
+                new TestBucket(firstBucket, 0, firstBucket + " group", null),
+                new TestBucket(secondBucket, 1, secondBucket + " group", null));
+        final Allocation allocation = new Allocation(allocationRule, ImmutableList.of(new Range(0, firstLength), new Range(1, 1 - firstLength)));
+        return new TestDefinition(EnvironmentVersion.UNKNOWN_REVISION, null, TestType.USER, "salt", buckets, ImmutableList.of(allocation),
+                Collections.<String, Object>emptyMap(), Collections.<String, Object>emptyMap(), description);
+    }
+
+    private static Revision revision(final String revision, final long time) {
+        return new Revision(revision, "author", new Date(time), "message");
+    }
+}
@@ -0,0 +1,93 @@
+package com.indeed.proctor.webapp.util.threads;
+
+import com.google.common.collect.Maps;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares {@link FanOut} with the Thread.sleep(10) polling loop it replaced in
+ * RemoteProctorSpecificationSource and ProctorTestDefinitionController.
+ *
+ * Simulates 1,000 clients answering within 0-20 ms on a 10 thread pool (the verify.executor.threads default).
+ * Not run as part of the test suite, run the main method manually.
+ */
+public class FanOutBenchmark {
+    private static final int CLIENTS = 1000;
+    private static final int THREADS = 10;
+    private static final int ROUNDS = 5;
+
+    public static void main(final String[] args) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final AtomicLong checks = new AtomicLong();
+                long start = System.nanoTime();
+                pollingLoop(executor, checks);
+                final long pollingMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                fanOut(executor);
+                final long fanOutMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                System.out.printf("round %d: polling loop %d ms (%d isDone checks), fan-out %d ms%n",
+                        round, pollingMillis, checks.get(), fanOutMillis);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void pollingLoop(final ExecutorService executor, final AtomicLong checks) throws InterruptedException {
+        final Map<Integer, Future<Integer>> futures = Maps.newLinkedHashMap();
+        final Random random = new Random(0);
+        for (int i = 0; i < CLIENTS; i++) {
+            futures.put(i, executor.submit(simulatedClient(random.nextInt(20), i)));
+        }
+        while (!futures.isEmpty()) {
+            Thread.sleep(10);
+            for (final Iterator<Map.Entry<Integer, Future<Integer>>> iterator = futures.entrySet().iterator(); iterator.hasNext(); ) {
+                final Map.Entry<Integer, Future<Integer>> entry = iterator.next();
+                checks.incrementAndGet();
+                if (entry.getValue().isDone()) {
+                    iterator.remove();
+                    try {
+                        entry.getValue().get();
+                    } catch (final ExecutionException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void fanOut(final ExecutorService executor) {
+        final FanOut<Integer, Integer> fanOut = new FanOut<Integer, Integer>(executor);
+        final Random random = new Random(0);
+        for (int i = 0; i < CLIENTS; i++) {
+            fanOut.submit(i, simulatedClient(random.nextInt(20), i));
+        }
+        final long completed = fanOut.results(1, 1, TimeUnit.MINUTES).filter(FanOut.Result::isSuccess).count();
+        if (completed != CLIENTS) {
+            throw new IllegalStateException("Only " + completed + " of " + CLIENTS + " completed");
+        }
+    }
+
+    private static Callable<Integer> simulatedClient(final int latencyMillis, final int value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                Thread.sleep(latencyMillis);
+                return value;
+            }
+        };
+    }
+}
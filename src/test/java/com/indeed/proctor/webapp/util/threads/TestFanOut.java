@@ -0,0 +1,107 @@
+package com.indeed.proctor.webapp.util.threads;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for {@link FanOut}
+ */
+public class TestFanOut {
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testResultsInCompletionOrder() {
+        final FanOut<String, Integer> fanOut = new FanOut<String, Integer>(executor);
+        fanOut.submit("slow", sleepAndReturn(200, 1));
+        fanOut.submit("fast", sleepAndReturn(0, 2));
+
+        final List<String> keys = fanOut.results(5, 5, TimeUnit.SECONDS)
+                .map(FanOut.Result::getKey)
+                .collect(Collectors.toList());
+        Assert.assertEquals("fast", keys.get(0));
+        Assert.assertEquals("slow", keys.get(1));
+        Assert.assertEquals(0, fanOut.getPendingCount());
+    }
+
+    @Test
+    public void testFailuresAreReported() {
+        final FanOut<String, Integer> fanOut = new FanOut<String, Integer>(executor);
+        fanOut.submit("ok", sleepAndReturn(0, 1));
+        fanOut.submit("broken", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                throw new IllegalStateException("broken");
+            }
+        });
+
+        final Map<String, FanOut.Result<String, Integer>> results = collect(fanOut.results(5, 5, TimeUnit.SECONDS));
+        Assert.assertEquals(FanOut.Status.SUCCESS, results.get("ok").getStatus());
+        Assert.assertEquals(Integer.valueOf(1), results.get("ok").getValue());
+        Assert.assertEquals(FanOut.Status.FAILED, results.get("broken").getStatus());
+        Assert.assertTrue(results.get("broken").getError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testTaskTimeoutCancelsStragglers() {
+        final FanOut<String, Integer> fanOut = new FanOut<String, Integer>(executor);
+        fanOut.submit("ok", sleepAndReturn(0, 1));
+        fanOut.submit("straggler", sleepAndReturn(10000, 2));
+
+        final long start = System.currentTimeMillis();
+        final Map<String, FanOut.Result<String, Integer>> results = collect(fanOut.results(100, 5000, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(FanOut.Status.SUCCESS, results.get("ok").getStatus());
+        Assert.assertEquals(FanOut.Status.TIMED_OUT, results.get("straggler").getStatus());
+    }
+
+    @Test
+    public void testOverallTimeoutCancelsPendingTasks() {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            final FanOut<String, Integer> fanOut = new FanOut<String, Integer>(single);
+            fanOut.submit("running", sleepAndReturn(10000, 1));
+            fanOut.submit("queued", sleepAndReturn(0, 2));
+
+            final Map<String, FanOut.Result<String, Integer>> results = collect(fanOut.results(5000, 100, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(FanOut.Status.TIMED_OUT, results.get("running").getStatus());
+            Assert.assertEquals(FanOut.Status.TIMED_OUT, results.get("queued").getStatus());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    private static Map<String, FanOut.Result<String, Integer>> collect(final java.util.stream.Stream<FanOut.Result<String, Integer>> results) {
+        return results.collect(Collectors.toMap(FanOut.Result::getKey, Function.<FanOut.Result<String, Integer>>identity()));
+    }
+
+    private static Callable<Integer> sleepAndReturn(final long millis, final int value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                Thread.sleep(millis);
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,222 @@
+package com.indeed.proctor.webapp.util.threads;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link StagedPipeline}
+ */
+public class TestStagedPipeline {
+    private static final StagedPipeline.Step NOOP = new StagedPipeline.Step() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private StagedPipeline<String> pipeline;
+
+    @Before
+    public void setUp() {
+        pipeline = new StagedPipeline<String>("TestStagedPipeline", ImmutableList.of("first", "second"), 2, 10);
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void testSameKeyRunsInOrder() throws Exception {
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        final List<CompletableFuture<Void>> operations = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 5; i++) {
+            operations.add(pipeline.submit(ImmutableList.of("test"), steps(log, "op" + i, 10)));
+        }
+        for (final CompletableFuture<Void> operation : operations) {
+            operation.get(5, TimeUnit.SECONDS);
+        }
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            expected.add("op" + i + "-first");
+            expected.add("op" + i + "-second");
+        }
+        Assert.assertEquals(expected, log);
+    }
+
+    @Test
+    public void testFailureSkipsRemainingStepsButNotNextOperation() throws Exception {
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        final CompletableFuture<Void> failed = pipeline.submit(ImmutableList.of("test"), ImmutableList.<StagedPipeline.Step>of(
+                new StagedPipeline.Step() {
+                    @Override
+                    public void run() throws Exception {
+                        throw new Exception("broken");
+                    }
+                },
+                new StagedPipeline.Step() {
+                    @Override
+                    public void run() {
+                        log.add("failed-second");
+                    }
+                }));
+        final CompletableFuture<Void> next = pipeline.submit(ImmutableList.of("test"), steps(log, "next", 0));
+
+        try {
+            failed.get(5, TimeUnit.SECONDS);
+            Assert.fail("the first step threw");
+        } catch (final ExecutionException e) {
+            Assert.assertEquals("broken", StagedPipeline.unwrap(e.getCause()).getMessage());
+        }
+        next.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(ImmutableList.of("next-first", "next-second"), log);
+    }
+
+    @Test
+    public void testDifferentKeysRunInParallel() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final StagedPipeline.Step waitForOther = new StagedPipeline.Step() {
+            @Override
+            public void run() throws Exception {
+                bothStarted.countDown();
+                if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("operations did not overlap");
+                }
+            }
+        };
+        final CompletableFuture<Void> a = pipeline.submit(ImmutableList.of("a"), ImmutableList.of(waitForOther, NOOP));
+        final CompletableFuture<Void> b = pipeline.submit(ImmutableList.of("b"), ImmutableList.of(waitForOther, NOOP));
+        a.get(10, TimeUnit.SECONDS);
+        b.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testOverlappingKeysSubmittedConcurrently() throws Exception {
+        final int submitters = 8;
+        final int operationsPerSubmitter = 200;
+        // many shared keys widen the window in which two submissions could interleave their registrations
+        final List<String> sharedKeys = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            sharedKeys.add("shared" + i);
+        }
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final StagedPipeline.Step exclusive = new StagedPipeline.Step() {
+            @Override
+            public void run() {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                running.decrementAndGet();
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(submitters);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<CompletableFuture<Void>> operations = Collections.synchronizedList(new ArrayList<CompletableFuture<Void>>());
+        try {
+            for (int submitter = 0; submitter < submitters; submitter++) {
+                // the same keys listed in both orders, plus a key of its own
+                final List<String> keys = new ArrayList<String>(sharedKeys);
+                if (submitter % 2 == 1) {
+                    Collections.reverse(keys);
+                }
+                keys.add("own" + submitter);
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (final InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        for (int i = 0; i < operationsPerSubmitter; i++) {
+                            operations.add(pipeline.submit(keys, ImmutableList.of(exclusive, NOOP)));
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(submitters * operationsPerSubmitter, operations.size());
+        for (final CompletableFuture<Void> operation : operations) {
+            // an operation waiting for another one waiting for it never completes
+            operation.get(10, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    public void testFullFirstStageRejectsWithoutRunningOnCaller() throws Exception {
+        final StagedPipeline<String> full = new StagedPipeline<String>("TestStagedPipelineFull", ImmutableList.of("first", "second"), 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger ranOnCaller = new AtomicInteger();
+        final StagedPipeline.Step blocking = new StagedPipeline.Step() {
+            @Override
+            public void run() throws Exception {
+                if (Thread.currentThread() == caller) {
+                    ranOnCaller.incrementAndGet();
+                }
+                release.await(5, TimeUnit.SECONDS);
+            }
+        };
+        try {
+            // one operation runs, one waits in the queue, the third finds no room
+            final CompletableFuture<Void> running = full.submit(ImmutableList.of("a"), ImmutableList.of(blocking, NOOP));
+            final CompletableFuture<Void> queued = full.submit(ImmutableList.of("b"), ImmutableList.of(blocking, NOOP));
+            final CompletableFuture<Void> rejected = full.submit(ImmutableList.of("c"), ImmutableList.of(blocking, NOOP));
+            try {
+                rejected.get(5, TimeUnit.SECONDS);
+                Assert.fail("the first stage was full");
+            } catch (final ExecutionException e) {
+                Assert.assertTrue(StagedPipeline.unwrap(e.getCause()) instanceof RejectedExecutionException);
+            }
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(0, ranOnCaller.get());
+
+            // the rejected operation does not hold its key
+            full.submit(ImmutableList.of("c"), ImmutableList.of(NOOP, NOOP)).get(5, TimeUnit.SECONDS);
+        } finally {
+            full.shutdown();
+        }
+    }
+
+    private static List<StagedPipeline.Step> steps(final List<String> log, final String name, final long sleepMillis) {
+        return ImmutableList.<StagedPipeline.Step>of(
+                new StagedPipeline.Step() {
+                    @Override
+                    public void run() throws Exception {
+                        log.add(name + "-first");
+                        Thread.sleep(sleepMillis);
+                    }
+                },
+                new StagedPipeline.Step() {
+                    @Override
+                    public void run() {
+                        log.add(name + "-second");
+                    }
+                });
+    }
+}
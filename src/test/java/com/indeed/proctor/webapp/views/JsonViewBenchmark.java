@@ -0,0 +1,126 @@
+package com.indeed.proctor.webapp.views;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.EnvironmentVersion;
+import com.indeed.proctor.common.Serializers;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the output modes of {@link JsonView} on a matrix of 5,000 tests with 2-5 buckets,
+ * 1-3 allocations with rules, and descriptions:
+ * pretty printed through the Writer of the response (what every response used to be), pretty and compact
+ * streamed to the output stream, and bytes serialized ahead of the request.
+ * Not run as part of the test suite, run the main method manually.
+ */
+public class JsonViewBenchmark {
+    private static final int TESTS = 5000;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 20;
+
+    public static void main(final String[] args) throws Exception {
+        final TestMatrixDefinition matrix = generateMatrix();
+        final SerializedJson serialized = new SerializedJson(Serializers.strict().writeValueAsBytes(matrix));
+
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            final boolean print = round >= WARMUP_ROUNDS;
+            run(print, "pretty, Writer", new Mode() {
+                @Override
+                public int render() throws Exception {
+                    final MockHttpServletResponse response = new MockHttpServletResponse();
+                    Serializers.strict().writerWithDefaultPrettyPrinter().writeValue(response.getWriter(), matrix);
+                    return response.getContentAsByteArray().length;
+                }
+            });
+            run(print, "pretty, streamed", new Mode() {
+                @Override
+                public int render() throws Exception {
+                    final MockHttpServletRequest request = new MockHttpServletRequest();
+                    request.setParameter("pretty", "true");
+                    return render(new JsonView(matrix), request);
+                }
+            });
+            run(print, "compact, streamed", new Mode() {
+                @Override
+                public int render() throws Exception {
+                    return render(new JsonView(matrix), new MockHttpServletRequest());
+                }
+            });
+            run(print, "pre-serialized", new Mode() {
+                @Override
+                public int render() throws Exception {
+                    return render(new JsonView(serialized, "matrix-benchmark", JsonView.CACHE_REVALIDATE), new MockHttpServletRequest());
+                }
+            });
+            run(print, "pre-serialized, gzip", new Mode() {
+                @Override
+                public int render() throws Exception {
+                    final MockHttpServletRequest request = new MockHttpServletRequest();
+                    request.addHeader("Accept-Encoding", "gzip, deflate");
+                    return render(new JsonView(serialized, "matrix-benchmark", JsonView.CACHE_REVALIDATE), request);
+                }
+            });
+        }
+    }
+
+    private static void run(final boolean print, final String name, final Mode mode) throws Exception {
+        final long start = System.nanoTime();
+        final int length = mode.render();
+        final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        if (print) {
+            System.out.printf("%-22s %,8d us %,10d bytes%n", name, micros, length);
+        }
+    }
+
+    private abstract static class Mode {
+        abstract int render() throws Exception;
+
+        int render(final JsonView view, final MockHttpServletRequest request) throws Exception {
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            view.render(Collections.<String, Object>emptyMap(), request, response);
+            return response.getContentAsByteArray().length;
+        }
+    }
+
+    private static TestMatrixDefinition generateMatrix() {
+        final Random random = new Random(0);
+        final Map<String, TestDefinition> tests = Maps.newHashMapWithExpectedSize(TESTS);
+        for (int test = 0; test < TESTS; test++) {
+            final List<TestBucket> buckets = Lists.newArrayList(new TestBucket("inactive", -1, "Inactive users, not in the test", null));
+            final int bucketCount = 2 + random.nextInt(4);
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                buckets.add(new TestBucket((bucket == 0 ? "control" : "test" + bucket), bucket, "Bucket " + bucket + " of test " + test, null));
+            }
+            final List<Allocation> allocations = Lists.newArrayList();
+            final int allocationCount = 1 + random.nextInt(3);
+            for (int allocation = 0; allocation < allocationCount; allocation++) {
+                final List<Range> ranges = Lists.newArrayList(new Range(-1, 0.5));
+                for (int bucket = 0; bucket < bucketCount; bucket++) {
+                    ranges.add(new Range(bucket, 0.5 / bucketCount));
+                }
+                final String rule = allocation < allocationCount - 1 ? "${country == '" + (char) ('A' + allocation) + "S' && loggedIn}" : null;
+                allocations.add(new Allocation(rule, ranges));
+            }
+            tests.put("example_test_" + test, new TestDefinition(EnvironmentVersion.UNKNOWN_REVISION, "${lang == 'en'}", TestType.USER, "&example_test_" + test,
+                    buckets, allocations, Collections.<String, Object>emptyMap(), Collections.<String, Object>emptyMap(),
+                    "Description of example test " + test + " as entered in the editor"));
+        }
+        final TestMatrixDefinition matrix = new TestMatrixDefinition();
+        matrix.setTests(ImmutableMap.copyOf(tests));
+        return matrix;
+    }
+}